@@ -0,0 +1,189 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+
+import rip.bench.RipHarness;
+
+/**
+ * Implements the benchmarked operations on synthetic routing tables. Lives
+ * in the default package so that it can reach the daemon's classes, including
+ * their package-private methods.
+ */
+public class BenchmarkHarness implements RipHarness {
+    /**
+     * The router ID of the router being benchmarked.
+     */
+    private static final int ROUTER_ID = 1;
+
+    /**
+     * The route timeout and garbage-collection periods in seconds. These are
+     * long enough that no routes expire during a benchmark run, so that the
+     * table being measured stays the same size. The table has no daemon, so
+     * routes which do expire trigger no updates.
+     */
+    private static final int TIMEOUT_PERIOD = 3600;
+    private static final int GARBAGE_COLLECTION_PERIOD = 120;
+
+    /**
+     * The first port number given to the neighbours. Nothing is ever sent to
+     * these ports.
+     */
+    private static final int FIRST_NEIGHBOUR_PORT = 10000;
+
+    private RoutingTable table;
+
+    private Input input;
+
+    private Output output;
+
+    /**
+     * The router IDs of the neighbours.
+     */
+    private int[] neighbourIds;
+
+    /**
+     * A response packet from the first neighbour, re-advertising routes which
+     * the table already has through that neighbour with the same metric.
+     */
+    private ByteBuffer packet;
+
+    /**
+     * The dest IDs and metrics of the entries in the packet, used to benchmark
+     * processing single entries.
+     */
+    private int[] packetDestIds;
+    private int[] packetMetrics;
+    private int numPacketEntries;
+    private int nextEntry = 0;
+
+    /**
+     * Buffer to encode response messages into.
+     */
+    private ByteBuffer message = ByteBuffer.allocateDirect(
+            RIPDaemon.MAX_RESPONSE_PACKET_SIZE);
+
+    @Override
+    public void setUp(int numRoutes, int numNeighbours) {
+        // Every destination must have a router ID the daemon accepts, so
+        // that the table is one a real router could hold.
+        if (ROUTER_ID + Math.max(numRoutes, numNeighbours) >
+                RIPDaemon.MAX_ROUTER_ID) {
+            throw new IllegalArgumentException(String.format(
+                    "At most %d routes and neighbours can be benchmarked.",
+                    RIPDaemon.MAX_ROUTER_ID - ROUTER_ID));
+        }
+
+        // Neighbours have IDs 2 to numNeighbours + 1, with a metric of 1.
+        ArrayList<int[]> outputs = new ArrayList<>();
+        neighbourIds = new int[numNeighbours];
+        for (int i = 0; i < numNeighbours; i++) {
+            neighbourIds[i] = ROUTER_ID + 1 + i;
+            outputs.add(new int[] {FIRST_NEIGHBOUR_PORT + i, 1,
+                    neighbourIds[i]});
+        }
+
+        // Nothing is sent or received, so the transport owns no ports.
+        Transport transport = new InMemoryNetwork().createTransport(
+                new ArrayList<Integer>(), 1);
+        table = new RoutingTable(null, ROUTER_ID, new SystemClock(), outputs,
+                TIMEOUT_PERIOD, GARBAGE_COLLECTION_PERIOD);
+        input = new Input(transport, table, null);
+        output = new Output(ROUTER_ID, transport, outputs);
+
+        // Fill the rest of the table with routes spread evenly across the
+        // neighbours, with metrics between 2 and 15.
+        Random random = new Random(numRoutes * 31 + numNeighbours);
+        int firstDestId = ROUTER_ID + 1 + numNeighbours;
+        for (int i = numNeighbours; i < numRoutes; i++) {
+            int destId = firstDestId + i - numNeighbours;
+            table.addEntry(destId, 2 + random.nextInt(14),
+                    neighbourIds[i % numNeighbours]);
+        }
+
+        buildPacket();
+    }
+
+    /**
+     * Builds a full-size packet from the first neighbour. Routes through that
+     * neighbour are advertised with their current metric, so processing the
+     * packet only resets their timeouts. Any remaining space is filled with
+     * routes through other neighbours, advertised with a worse metric so the
+     * table is left unchanged.
+     */
+    private void buildPacket() {
+        int senderId = neighbourIds[0];
+        packetDestIds = new int[RIPDaemon.MAX_ENTRIES_PER_PACKET];
+        packetMetrics = new int[RIPDaemon.MAX_ENTRIES_PER_PACKET];
+        numPacketEntries = 0;
+
+        for (int pass = 0; pass < 2; pass++) {
+            for (int slot = 0; slot < table.numEntries() &&
+                    numPacketEntries < packetDestIds.length; slot++) {
+                int destId = table.destIdAt(slot);
+                boolean throughSender = table.nextHopAt(slot) == senderId;
+                if (destId == senderId || throughSender != (pass == 0)) {
+                    continue;
+                }
+
+                int metric = table.metricAt(slot);
+                packetDestIds[numPacketEntries] = destId;
+                packetMetrics[numPacketEntries] = throughSender ? metric - 1
+                        : Math.min(metric, RIPDaemon.INFINITY - 1);
+                numPacketEntries++;
+            }
+        }
+
+        packet = ByteBuffer.allocateDirect(RIPDaemon.MAX_RESPONSE_PACKET_SIZE);
+        packet.put(RIPDaemon.RESPONSE_COMMAND);
+        packet.put(RIPDaemon.RIP_VERSION);
+        packet.putShort((short) senderId);
+        for (int i = 0; i < numPacketEntries; i++) {
+            packet.putInt(packetDestIds[i]);
+            packet.putInt(packetMetrics[i]);
+        }
+        packet.flip();
+    }
+
+    @Override
+    public void processPacket() {
+        packet.rewind();
+        input.processPacket(packet);
+    }
+
+    @Override
+    public void processEntry() {
+        int i = nextEntry;
+        nextEntry = i + 1 < numPacketEntries ? i + 1 : 0;
+        input.processEntry(neighbourIds[0], packetDestIds[i],
+                packetMetrics[i]);
+    }
+
+    @Override
+    public int encodeUpdates() {
+        RoutingTableSnapshot routes = table.snapshot();
+        int numEntries = routes.numEntries();
+        int bytes = 0;
+        for (int neighbourId : neighbourIds) {
+            for (int start = 0; start < numEntries;
+                    start += RIPDaemon.MAX_ENTRIES_PER_PACKET) {
+                int end = Math.min(start + RIPDaemon.MAX_ENTRIES_PER_PACKET,
+                        numEntries);
+                message.clear();
+                output.createResponseMessage(neighbourId, routes, start, end,
+                        message);
+                bytes += message.limit();
+            }
+        }
+        return bytes;
+    }
+
+    @Override
+    public void checkTimers() {
+        table.checkTimers();
+    }
+
+    @Override
+    public String renderTable() {
+        return table.toString();
+    }
+}
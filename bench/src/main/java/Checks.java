@@ -0,0 +1,56 @@
+/**
+ * Runs self-checks of the daemon's data structures and file formats, which
+ * JMH timings and simulated convergence would not catch going wrong in
+ * corner cases. Each check prints what failed, and the program exits with
+ * status 1 if any did.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar Checks
+ */
+public class Checks {
+    /**
+     * The number of checks which have failed so far.
+     */
+    private static int failures = 0;
+
+    /**
+     * The number of checks run so far.
+     */
+    private static int total = 0;
+
+    /**
+     * Records the result of a single check, printing the description if it
+     * failed.
+     * @param passed        Whether the check passed.
+     * @param description   What was being checked.
+     */
+    static void check(boolean passed, String description) {
+        total++;
+        if (!passed) {
+            failures++;
+            System.out.println("FAILED: " + description);
+        }
+    }
+
+    /**
+     * Records whether two values are equal, printing both if they are not.
+     * @param expected      The expected value.
+     * @param actual        The actual value.
+     * @param description   What was being checked.
+     */
+    static void checkEquals(long expected, long actual, String description) {
+        check(expected == actual, String.format("%s (expected %d, got %d)",
+                description, expected, actual));
+    }
+
+    public static void main(String[] args) {
+        IntIntMapChecks.run();
+        TimerWheelChecks.run();
+        StateFileChecks.run();
+
+        System.out.println(String.format("%d checks, %d failed.", total,
+                failures));
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,462 @@
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Measures how long generated networks of RIP daemons take to converge, and
+ * how much they send while doing so, both from a cold start and after a
+ * link or router fails. Routers run in virtual time in a Simulation, so
+ * minutes of protocol time take a fraction of a second and results are
+ * reproducible for a given seed.
+ *
+ * The network has converged once every router's metric to every other
+ * router matches the shortest path through the surviving topology, with
+ * unreachable routers either missing or at infinity. Convergence is checked
+ * at a fixed resolution of virtual time, and the convergence time reported
+ * is when the network last became converged during the phase. The peak
+ * number of packets sent across the whole network in any one step of that
+ * resolution is also reported, showing how bursty the traffic is.
+ *
+ * Usage: java -cp bench/target/benchmarks.jar ConvergenceBenchmark
+ *            ring|grid|random|scale-free|lan|conf [options]
+ */
+public class ConvergenceBenchmark {
+    private static final String USAGE = "Usage: java ConvergenceBenchmark " +
+            "ring|grid|random|scale-free|lan|conf [--sizes n,...] " +
+            "[--periods seconds,...] [--failure none|link|router] " +
+            "[--degree d] [--lan-size n] [--segments on|off] " +
+            "[--seed s] [--duration periods] " +
+            "[--resolution-ms ms] [--spread percent] [--rate bytes] " +
+            "[--conf-dir dir] [--config-dir dir]";
+
+    /**
+     * The topology generator to use.
+     */
+    private String topologyType;
+
+    /**
+     * The network sizes and update periods to measure every combination of.
+     */
+    private int[] sizes = {10, 50, 100};
+    private int[] updatePeriods = {5};
+
+    /**
+     * The kind of failure to inject once the network has started up: none,
+     * link or router.
+     */
+    private String failure = "link";
+
+    /**
+     * The mean number of links per router in random and scale-free graphs.
+     */
+    private int degree = 4;
+
+    /**
+     * The number of routers on each LAN of the lan topology, and whether
+     * they send multicast updates to their LAN's segment rather than to each
+     * neighbour on it.
+     */
+    private int lanSize = 8;
+    private boolean useSegments = false;
+
+    /**
+     * Seed for the topology, the failure and the routers' update timers.
+     */
+    private long seed = 1;
+
+    /**
+     * The length of each phase, in update periods.
+     */
+    private int durationPeriods = 30;
+
+    /**
+     * How often convergence is checked, in milliseconds of virtual time.
+     */
+    private int resolutionMillis = 100;
+
+    /**
+     * The window to spread each router's periodic updates over, as a
+     * percentage of the update period, and the most bytes each router may
+     * send per second (0 for no limit).
+     */
+    private int spreadPercent = 0;
+    private int bytesPerSecond = 0;
+
+    /**
+     * The directory holding the config files for the conf topology.
+     */
+    private String confDir = "conf";
+
+    /**
+     * The directory to write generated config files to, or null to use a
+     * temporary directory.
+     */
+    private String configDir = null;
+
+    /**
+     * The topology being measured, and the daemon of each of its routers by
+     * index, or null once a router has failed.
+     */
+    private Topology topology;
+    private RIPDaemon[] routers;
+
+    /**
+     * The expected metric between each pair of routers by index, given the
+     * current failures.
+     */
+    private int[][] expectedMetrics;
+
+    private Simulation simulation;
+    private SimulatedClock clock;
+
+    /**
+     * Reads the command line options.
+     */
+    private ConvergenceBenchmark(String[] args) {
+        if (args.length == 0) {
+            Error.error(USAGE);
+        }
+        topologyType = args[0];
+
+        for (int i = 1; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                Error.error(USAGE);
+            }
+            String value = args[i + 1];
+            try {
+                switch (args[i]) {
+                    case "--sizes":
+                        sizes = parseList(value);
+                        break;
+                    case "--periods":
+                        updatePeriods = parseList(value);
+                        break;
+                    case "--failure":
+                        failure = value;
+                        break;
+                    case "--degree":
+                        degree = Integer.parseInt(value);
+                        break;
+                    case "--lan-size":
+                        lanSize = Integer.parseInt(value);
+                        break;
+                    case "--segments":
+                        if (!value.equals("on") && !value.equals("off")) {
+                            Error.error(USAGE);
+                        }
+                        useSegments = value.equals("on");
+                        break;
+                    case "--seed":
+                        seed = Long.parseLong(value);
+                        break;
+                    case "--duration":
+                        durationPeriods = Integer.parseInt(value);
+                        break;
+                    case "--resolution-ms":
+                        resolutionMillis = Integer.parseInt(value);
+                        break;
+                    case "--spread":
+                        spreadPercent = Integer.parseInt(value);
+                        break;
+                    case "--rate":
+                        bytesPerSecond = Integer.parseInt(value);
+                        break;
+                    case "--conf-dir":
+                        confDir = value;
+                        break;
+                    case "--config-dir":
+                        configDir = value;
+                        break;
+                    default:
+                        Error.error(USAGE);
+                }
+            } catch (NumberFormatException e) {
+                Error.error(USAGE);
+            }
+        }
+
+        if (!failure.equals("none") && !failure.equals("link") &&
+                !failure.equals("router")) {
+            Error.error(USAGE);
+        }
+
+        // Links on a segment carry updates by multicast, so disconnecting
+        // their unicast ports would not fail them.
+        if (useSegments && failure.equals("link")) {
+            Error.error("Link failures cannot be used with --segments on.");
+        }
+    }
+
+    /**
+     * Parses a comma separated list of integers.
+     */
+    private static int[] parseList(String list) {
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            values[i] = Integer.parseInt(parts[i]);
+        }
+        return values;
+    }
+
+    /**
+     * Measures every combination of size and update period, printing a row
+     * of results for each phase.
+     */
+    private void runAll() {
+        System.out.println("topology    routers  links  period  phase   " +
+                "converged-s  packets/router (mean max)  " +
+                "bytes/router (mean max)  peak-packets/step");
+
+        // The conf topology has a fixed size.
+        int[] runSizes = topologyType.equals("conf") ? new int[] {0} : sizes;
+        for (int size : runSizes) {
+            for (int updatePeriod : updatePeriods) {
+                run(size, updatePeriod);
+            }
+        }
+    }
+
+    /**
+     * Builds a network of the given size and update period, then measures
+     * its startup and, if enabled, its recovery from a failure.
+     */
+    private void run(int size, int updatePeriod) {
+        Random random = new Random(seed);
+        topology = generate(size, random);
+
+        File directory = configDirectory();
+        ArrayList<String> filenames = topology.writeConfigs(directory,
+                updatePeriod, useSegments);
+
+        clock = new SimulatedClock();
+        simulation = new Simulation(clock);
+        simulation.setSeed(seed);
+        routers = new RIPDaemon[topology.numRouters()];
+        for (int i = 0; i < filenames.size(); i++) {
+            ConfigFileParser parser = new ConfigFileParser(filenames.get(i));
+            parser.parseFile();
+            routers[i] = simulation.addRouter(parser);
+            routers[i].setOutputPacing(spreadPercent, bytesPerSecond);
+        }
+
+        long phaseLength = durationPeriods * updatePeriod *
+                Clock.NANOS_PER_SECOND;
+        setExpectedMetrics(-1, -1);
+        measure("start", updatePeriod, phaseLength);
+
+        if (failure.equals("link")) {
+            int link = random.nextInt(topology.numLinks());
+            for (int port : topology.linkPorts(link)) {
+                simulation.getNetwork().disconnectPort(port);
+            }
+            setExpectedMetrics(link, -1);
+            measure("link", updatePeriod, phaseLength);
+        } else if (failure.equals("router")) {
+            int router = random.nextInt(topology.numRouters());
+            simulation.removeRouter(routers[router]);
+            routers[router] = null;
+            setExpectedMetrics(-1, router);
+            measure("router", updatePeriod, phaseLength);
+        }
+    }
+
+    /**
+     * Generates a topology of the configured type.
+     */
+    private Topology generate(int size, Random random) {
+        switch (topologyType) {
+            case "ring":
+                return Topology.ring(size, random);
+            case "grid":
+                int side = (int) Math.round(Math.sqrt(size));
+                return Topology.grid(side, side, random);
+            case "random":
+                return Topology.erdosRenyi(size, degree, random);
+            case "lan":
+                return Topology.lans(size, lanSize, random);
+            case "scale-free":
+                return Topology.scaleFree(size, Math.max(degree / 2, 1),
+                        random);
+            case "conf":
+                ArrayList<ConfigFileParser> configs = new ArrayList<>();
+                for (int id = 1; id <= 7; id++) {
+                    ConfigFileParser parser = new ConfigFileParser(
+                            new File(confDir, id + ".conf").getPath());
+                    parser.parseFile();
+                    configs.add(parser);
+                }
+                return Topology.fromConfigs(configs);
+            default:
+                Error.error(USAGE);
+                return null;
+        }
+    }
+
+    /**
+     * Returns the directory to write config files to, creating a temporary
+     * one if none was given.
+     */
+    private File configDirectory() {
+        if (configDir != null) {
+            File directory = new File(configDir);
+            directory.mkdirs();
+            return directory;
+        }
+
+        try {
+            File directory = Files.createTempDirectory("rip-topology")
+                    .toFile();
+            directory.deleteOnExit();
+            for (int i = 0; i < topology.numRouters(); i++) {
+                new File(directory, topology.routerId(i) + ".conf")
+                        .deleteOnExit();
+            }
+            return directory;
+        } catch (IOException e) {
+            Error.error("Could not create a directory for the config files.");
+            return null;
+        }
+    }
+
+    /**
+     * Works out the metric every router should converge to for every other
+     * router, given a failed link and router (either may be -1).
+     */
+    private void setExpectedMetrics(int failedLink, int failedRouter) {
+        expectedMetrics = new int[topology.numRouters()][];
+        for (int i = 0; i < topology.numRouters(); i++) {
+            expectedMetrics[i] = topology.shortestMetrics(i, failedLink,
+                    failedRouter);
+        }
+    }
+
+    /**
+     * Checks whether every surviving router's table matches the expected
+     * metrics.
+     */
+    private boolean isConverged() {
+        for (int i = 0; i < routers.length; i++) {
+            if (routers[i] == null) {
+                continue;
+            }
+
+            RoutingTable table = routers[i].getTable();
+            for (int j = 0; j < routers.length; j++) {
+                if (j == i) {
+                    continue;
+                }
+
+                int destId = topology.routerId(j);
+                int expected = expectedMetrics[i][j];
+                boolean hasRoute = table.hasRoute(destId);
+                if (expected < RIPDaemon.INFINITY) {
+                    if (!hasRoute || table.getMetric(destId) != expected) {
+                        return false;
+                    }
+                } else if (hasRoute &&
+                        table.getMetric(destId) < RIPDaemon.INFINITY) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Runs one phase of the simulation, recording when the network last
+     * became converged and how much each router had sent by then, and prints
+     * the results. Routers which are not converged by the end of the phase
+     * have their traffic counted up to the end.
+     */
+    private void measure(String phase, int updatePeriod, long phaseLength) {
+        long step = resolutionMillis * 1000000L;
+        long start = clock.nanoTime();
+
+        long[] startPackets = new long[routers.length];
+        long[] startBytes = new long[routers.length];
+        long[] packets = new long[routers.length];
+        long[] bytes = new long[routers.length];
+        countTraffic(startPackets, startBytes);
+
+        long convergedAt = -1;
+        long peakPackets = 0;
+        long lastTotal = totalPacketsSent();
+        for (long elapsed = 0; elapsed < phaseLength; elapsed += step) {
+            simulation.runFor(step);
+            long total = totalPacketsSent();
+            peakPackets = Math.max(peakPackets, total - lastTotal);
+            lastTotal = total;
+            if (!isConverged()) {
+                convergedAt = -1;
+            } else if (convergedAt < 0) {
+                convergedAt = clock.nanoTime() - start;
+                countTraffic(packets, bytes);
+            }
+        }
+        if (convergedAt < 0) {
+            countTraffic(packets, bytes);
+        }
+
+        int numRouters = 0;
+        long totalPackets = 0;
+        long maxPackets = 0;
+        long totalBytes = 0;
+        long maxBytes = 0;
+        for (int i = 0; i < routers.length; i++) {
+            if (routers[i] == null) {
+                continue;
+            }
+            long sentPackets = packets[i] - startPackets[i];
+            long sentBytes = bytes[i] - startBytes[i];
+            numRouters++;
+            totalPackets += sentPackets;
+            totalBytes += sentBytes;
+            maxPackets = Math.max(maxPackets, sentPackets);
+            maxBytes = Math.max(maxBytes, sentBytes);
+        }
+
+        String convergence = convergedAt < 0 ? "never" : String.format(
+                "%.1f", (double) convergedAt / Clock.NANOS_PER_SECOND);
+        System.out.println(String.format("%-11s %7d %6d %7d  %-7s %11s  " +
+                "%14.1f %10d  %12.1f %10d  %17d", topologyType,
+                topology.numRouters(), topology.numLinks(), updatePeriod,
+                phase, convergence, (double) totalPackets / numRouters,
+                maxPackets, (double) totalBytes / numRouters, maxBytes,
+                peakPackets));
+    }
+
+    /**
+     * Returns the total number of packets sent so far by the surviving
+     * routers.
+     */
+    private long totalPacketsSent() {
+        long total = 0;
+        for (RIPDaemon router : routers) {
+            if (router != null) {
+                total += simulation.getTransport(router).getPacketsSent();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Records the packets and bytes sent so far by each surviving router.
+     */
+    private void countTraffic(long[] packets, long[] bytes) {
+        for (int i = 0; i < routers.length; i++) {
+            if (routers[i] != null) {
+                InMemoryTransport transport =
+                        simulation.getTransport(routers[i]);
+                packets[i] = transport.getPacketsSent();
+                bytes[i] = transport.getBytesSent();
+            }
+        }
+    }
+
+    public static void main(String[] args) {
+        new ConvergenceBenchmark(args).runAll();
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+/**
+ * Checks IntIntMap, in particular that backward shift deletion keeps every
+ * other key reachable when removing keys from the middle of a run of
+ * collisions, including runs which wrap around the end of the arrays.
+ */
+public class IntIntMapChecks {
+    /**
+     * The number of slots in a map created with the default capacity, and
+     * the number of keys it holds before growing.
+     */
+    private static final int DEFAULT_SLOTS = 16;
+    private static final int MAX_KEYS_BEFORE_GROWING = DEFAULT_SLOTS / 2;
+
+    static void run() {
+        checkCollisionRun(3);
+        checkCollisionRun(DEFAULT_SLOTS - 1);
+        checkAgainstHashMap();
+    }
+
+    /**
+     * Fills a run of slots starting at the given home slot with keys which
+     * all hash to it, followed by a key whose home is the next slot, then
+     * removes the keys one at a time from the front, middle and back of the
+     * run, checking after each removal that the rest are still found.
+     */
+    private static void checkCollisionRun(int homeSlot) {
+        ArrayList<Integer> keys = keysWithHome(homeSlot, 4);
+        keys.addAll(keysWithHome((homeSlot + 1) % DEFAULT_SLOTS, 1));
+
+        IntIntMap map = new IntIntMap();
+        for (int key : keys) {
+            map.put(key, key * 2);
+        }
+        Checks.checkEquals(keys.size(), map.size(), String.format(
+                "IntIntMap size after colliding puts at slot %d", homeSlot));
+
+        int[] removalOrder = {1, 0, 2, 1, 0};
+        for (int index : removalOrder) {
+            int removed = keys.remove(index);
+            map.remove(removed);
+
+            Checks.check(!map.containsKey(removed), String.format(
+                    "IntIntMap still contains removed key %d", removed));
+            Checks.checkEquals(IntIntMap.NO_VALUE, map.get(removed),
+                    "IntIntMap value of removed key " + removed);
+            for (int key : keys) {
+                Checks.checkEquals(key * 2, map.get(key), String.format(
+                        "IntIntMap value of key %d after removing %d from " +
+                        "a collision run at slot %d", key, removed,
+                        homeSlot));
+            }
+            Checks.checkEquals(keys.size(), map.size(),
+                    "IntIntMap size after removing " + removed);
+        }
+
+        // Removed slots must be reusable.
+        for (int key : keysWithHome(homeSlot, 3)) {
+            map.put(key, 1);
+            Checks.checkEquals(1, map.get(key),
+                    "IntIntMap value of key re-added after removals " + key);
+        }
+    }
+
+    /**
+     * Applies a long random sequence of puts and removes over a small key
+     * range, so that collisions, growing and removals all interact, and
+     * compares the map with a HashMap after every operation.
+     */
+    private static void checkAgainstHashMap() {
+        Random random = new Random(1);
+        IntIntMap map = new IntIntMap();
+        HashMap<Integer, Integer> expected = new HashMap<>();
+
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(300) + 1;
+            if (random.nextInt(3) == 0) {
+                map.remove(key);
+                expected.remove(key);
+            } else {
+                int value = random.nextInt(1000);
+                map.put(key, value);
+                expected.put(key, value);
+            }
+
+            Integer value = expected.get(key);
+            if (map.get(key) != (value == null ? IntIntMap.NO_VALUE : value)
+                    || map.size() != expected.size()) {
+                Checks.check(false, String.format("IntIntMap differs from " +
+                        "HashMap for key %d after %d operations", key, i));
+                return;
+            }
+        }
+
+        for (int key = 1; key <= 300; key++) {
+            Integer value = expected.get(key);
+            Checks.checkEquals(value == null ? IntIntMap.NO_VALUE : value,
+                    map.get(key), "IntIntMap final value of key " + key);
+        }
+    }
+
+    /**
+     * Finds the given number of keys whose home slot is the given slot in a
+     * map with the default capacity, using the same hash as IntIntMap.
+     */
+    private static ArrayList<Integer> keysWithHome(int slot, int count) {
+        if (count > MAX_KEYS_BEFORE_GROWING) {
+            throw new IllegalArgumentException("Too many keys");
+        }
+
+        ArrayList<Integer> keys = new ArrayList<>();
+        for (int key = 1; keys.size() < count; key++) {
+            int h = key * 0x9E3779B9;
+            if (((h ^ (h >>> 16)) & (DEFAULT_SLOTS - 1)) == slot) {
+                keys.add(key);
+            }
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,358 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+
+/**
+ * Checks that routes saved to a StateFile are restored with the same
+ * destinations, metrics, next hops and remaining timeouts, and that files
+ * which should not be trusted are ignored: those left half-written, saved
+ * by another router, or saved so long ago that every route has timed out,
+ * and entries with invalid router IDs.
+ */
+public class StateFileChecks {
+    /**
+     * The offsets of the header fields which the checks tamper with, as laid
+     * out in StateFile.
+     */
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int NUM_ENTRIES_OFFSET = 16;
+    private static final int SAVED_AT_OFFSET = 20;
+
+    /**
+     * The size of the header, and of each entry, in bytes.
+     */
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 16;
+
+    /**
+     * Destination IDs outside the valid range, which a corrupt or hand-edited
+     * file could hold. 0 is also the key IntIntMap uses for empty slots.
+     */
+    private static final int[] INVALID_DEST_IDS = {0, -1,
+            RIPDaemon.MAX_ROUTER_ID + 1};
+
+    /**
+     * The router ID of the table saved, and its neighbours.
+     */
+    private static final int ROUTER_ID = 1;
+    private static final int[] NEIGHBOUR_IDS = {2, 3};
+
+    /**
+     * The route timeout and garbage-collection periods in seconds.
+     */
+    private static final int TIMEOUT_PERIOD = 180;
+    private static final int GARBAGE_COLLECTION_PERIOD = 120;
+
+    /**
+     * The number of routes added to the saved table besides the routes to
+     * the neighbours, enough that the file has to grow past its initial size.
+     * They go to the router IDs from FIRST_DEST_ID on.
+     */
+    private static final int NUM_ROUTES = 200;
+    private static final int FIRST_DEST_ID = 4;
+
+    /**
+     * How far the restored timeouts may be from the saved ones, allowing for
+     * the time taken to run the checks and for rounding to milliseconds.
+     */
+    private static final long TIMEOUT_TOLERANCE = Clock.NANOS_PER_SECOND;
+
+    static void run() {
+        File file;
+        try {
+            file = File.createTempFile("rip-state", ".bin");
+        } catch (IOException e) {
+            Checks.check(false, "StateFile could not create temporary file");
+            return;
+        }
+        file.deleteOnExit();
+
+        try {
+            checkEmptyFile(file);
+            checkRoundTrip(file);
+            checkOtherRouterIgnored(file);
+            checkHalfWrittenIgnored(file);
+            checkFormerNeighbourIgnored(file);
+            checkInvalidDestIdsIgnored(file);
+            checkDowntime(file);
+        } catch (IOException e) {
+            Checks.check(false, "StateFile could not tamper with file: " +
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Checks that a newly created file restores nothing.
+     */
+    private static void checkEmptyFile(File file) {
+        file.delete();
+        Checks.checkEquals(0, restore(file, ROUTER_ID, NEIGHBOUR_IDS),
+                "StateFile routes restored from a new file");
+    }
+
+    /**
+     * Saves a table, some of whose routes are being deleted, and checks that
+     * the rest are restored into a new table exactly, with their timeouts.
+     */
+    private static void checkRoundTrip(File file) {
+        SimulatedClock clock = new SimulatedClock();
+        RoutingTable saved = newTable(ROUTER_ID, clock, NEIGHBOUR_IDS);
+        fill(saved);
+        // Routes being deleted are not saved.
+        for (int id = FIRST_DEST_ID; id < FIRST_DEST_ID + 10; id++) {
+            saved.startDeletion(id);
+        }
+        // Move time on, so that some routes' timeouts differ from others.
+        clock.advance(7 * Clock.NANOS_PER_SECOND);
+        for (int id = FIRST_DEST_ID + 10; id < FIRST_DEST_ID + 20; id++) {
+            saved.resetTimeout(id);
+        }
+
+        new StateFile(file.getPath()).save(saved.currentSnapshot(),
+                clock.nanoTime());
+
+        SimulatedClock restoreClock = new SimulatedClock();
+        RoutingTable restored = newTable(ROUTER_ID, restoreClock,
+                NEIGHBOUR_IDS);
+        int numRestored = new StateFile(file.getPath()).restore(restored);
+        Checks.checkEquals(NUM_ROUTES - 10, numRestored,
+                "StateFile routes restored");
+
+        RoutingTableSnapshot before = saved.currentSnapshot();
+        RoutingTableSnapshot after = restored.currentSnapshot();
+        for (int i = 0; i < before.numEntries(); i++) {
+            int destId = before.destIdAt(i);
+            if (before.isGarbageCollectionStarted(i)) {
+                Checks.check(!restored.hasRoute(destId),
+                        "StateFile restored deleted route to " + destId);
+                continue;
+            }
+
+            int j = indexOf(after, destId);
+            if (j < 0 || after.metricAt(j) != before.metricAt(i) ||
+                    after.nextHopAt(j) != before.nextHopAt(i)) {
+                Checks.check(false, "StateFile route wrong after restoring: " +
+                        destId);
+                continue;
+            }
+
+            // The neighbours' own routes come from the config, with fresh
+            // timeouts, rather than from the file.
+            if (destId == before.nextHopAt(i)) {
+                continue;
+            }
+            long savedTimeout = before.deadlineAt(i) - clock.nanoTime();
+            long restoredTimeout = after.deadlineAt(j) -
+                    restoreClock.nanoTime();
+            Checks.check(Math.abs(savedTimeout - restoredTimeout) <=
+                    TIMEOUT_TOLERANCE, String.format("StateFile timeout of " +
+                    "route to %d changed from %d to %d ns", destId,
+                    savedTimeout, restoredTimeout));
+        }
+    }
+
+    /**
+     * Checks that a file saved by another router is not restored.
+     */
+    private static void checkOtherRouterIgnored(File file) {
+        saveFilledTable(file);
+        Checks.checkEquals(0, restore(file, ROUTER_ID + 1000, NEIGHBOUR_IDS),
+                "StateFile routes restored by a different router");
+    }
+
+    /**
+     * Checks that a file whose sequence number shows it was left part way
+     * through being saved is not restored, and that it is restored once the
+     * sequence number is even again.
+     */
+    private static void checkHalfWrittenIgnored(File file) throws IOException {
+        saveFilledTable(file);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(SEQUENCE_OFFSET);
+            int sequence = raw.readInt();
+            Checks.check(sequence % 2 == 0,
+                    "StateFile sequence number odd after saving");
+
+            raw.seek(SEQUENCE_OFFSET);
+            raw.writeInt(sequence + 1);
+        }
+        Checks.checkEquals(0, restore(file, ROUTER_ID, NEIGHBOUR_IDS),
+                "StateFile routes restored from a half-written file");
+
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(SEQUENCE_OFFSET);
+            int sequence = raw.readInt();
+            raw.seek(SEQUENCE_OFFSET);
+            raw.writeInt(sequence + 1);
+        }
+        Checks.checkEquals(NUM_ROUTES,
+                restore(file, ROUTER_ID, NEIGHBOUR_IDS),
+                "StateFile routes restored once the save completed");
+    }
+
+    /**
+     * Checks that routes through a router which is no longer a neighbour,
+     * because the config changed while the daemon was down, are not
+     * restored, while routes through the remaining neighbour are.
+     */
+    private static void checkFormerNeighbourIgnored(File file) {
+        saveFilledTable(file);
+        RoutingTable restored = newTable(ROUTER_ID, new SimulatedClock(),
+                NEIGHBOUR_IDS[0]);
+        Checks.checkEquals(NUM_ROUTES / 2,
+                new StateFile(file.getPath()).restore(restored),
+                "StateFile routes restored through one remaining neighbour");
+        for (int id = FIRST_DEST_ID; id < FIRST_DEST_ID + NUM_ROUTES; id++) {
+            if (restored.hasRoute(id) !=
+                    (nextHopOf(id) == NEIGHBOUR_IDS[0])) {
+                Checks.check(false, "StateFile route to " + id + " restored " +
+                        "through a router which is no longer a neighbour");
+                return;
+            }
+        }
+        Checks.check(!restored.hasRoute(NEIGHBOUR_IDS[1]),
+                "StateFile restored route to former neighbour");
+    }
+
+    /**
+     * Overwrites the destinations of the last entries in a saved file with
+     * invalid router IDs, and checks that those entries are skipped without
+     * disturbing the others.
+     */
+    private static void checkInvalidDestIdsIgnored(File file)
+            throws IOException {
+        saveFilledTable(file);
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(NUM_ENTRIES_OFFSET);
+            int numEntries = raw.readInt();
+            for (int i = 0; i < INVALID_DEST_IDS.length; i++) {
+                int entry = numEntries - INVALID_DEST_IDS.length + i;
+                raw.seek(HEADER_BYTES + (long) entry * ENTRY_BYTES);
+                raw.writeInt(INVALID_DEST_IDS[i]);
+            }
+        }
+
+        RoutingTable restored = newTable(ROUTER_ID, new SimulatedClock(),
+                NEIGHBOUR_IDS);
+        Checks.checkEquals(NUM_ROUTES - INVALID_DEST_IDS.length,
+                new StateFile(file.getPath()).restore(restored),
+                "StateFile routes restored with invalid destination IDs");
+        int firstOverwrittenId = FIRST_DEST_ID + NUM_ROUTES -
+                INVALID_DEST_IDS.length;
+        for (int id = FIRST_DEST_ID; id < FIRST_DEST_ID + NUM_ROUTES; id++) {
+            boolean valid = id < firstOverwrittenId;
+            if (restored.hasRoute(id) != valid ||
+                    (valid && restored.getMetric(id) != 2 + id % 14)) {
+                Checks.check(false, "StateFile route to " + id + " wrong " +
+                        "after skipping invalid destination IDs");
+                return;
+            }
+        }
+        Checks.checkEquals(NUM_ROUTES - INVALID_DEST_IDS.length +
+                NEIGHBOUR_IDS.length, restored.numEntries(),
+                "StateFile entries after skipping invalid destination IDs");
+    }
+
+    /**
+     * Checks that the time since the file was saved is taken off the
+     * restored timeouts, and that nothing is restored once they would all
+     * have timed out.
+     */
+    private static void checkDowntime(File file) throws IOException {
+        saveFilledTable(file);
+        setSavedAt(file, System.currentTimeMillis() - 100 * 1000);
+
+        SimulatedClock clock = new SimulatedClock();
+        RoutingTable restored = newTable(ROUTER_ID, clock, NEIGHBOUR_IDS);
+        new StateFile(file.getPath()).restore(restored);
+        RoutingTableSnapshot snapshot = restored.currentSnapshot();
+        long timeout = snapshot.deadlineAt(indexOf(snapshot, FIRST_DEST_ID)) -
+                clock.nanoTime();
+        long expected = (TIMEOUT_PERIOD - 100) * Clock.NANOS_PER_SECOND;
+        Checks.check(Math.abs(timeout - expected) <= TIMEOUT_TOLERANCE,
+                String.format("StateFile timeout after 100 s down was %d ns",
+                        timeout));
+
+        setSavedAt(file, System.currentTimeMillis() -
+                (TIMEOUT_PERIOD + 1) * 1000L);
+        Checks.checkEquals(0, restore(file, ROUTER_ID, NEIGHBOUR_IDS),
+                "StateFile routes restored after they would have timed out");
+    }
+
+    /**
+     * Saves a freshly filled table to the file.
+     */
+    private static void saveFilledTable(File file) {
+        SimulatedClock clock = new SimulatedClock();
+        RoutingTable table = newTable(ROUTER_ID, clock, NEIGHBOUR_IDS);
+        fill(table);
+        new StateFile(file.getPath()).save(table.currentSnapshot(),
+                clock.nanoTime());
+    }
+
+    /**
+     * Overwrites the wall-clock time at which the file was saved.
+     */
+    private static void setSavedAt(File file, long millis) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(SAVED_AT_OFFSET);
+            raw.writeLong(millis);
+        }
+    }
+
+    /**
+     * Restores the file into a new table of the given router and neighbours,
+     * returning the number of routes restored.
+     */
+    private static int restore(File file, int routerId,
+                               int... neighbourIds) {
+        RoutingTable table = newTable(routerId, new SimulatedClock(),
+                neighbourIds);
+        return new StateFile(file.getPath()).restore(table);
+    }
+
+    /**
+     * Adds NUM_ROUTES routes from FIRST_DEST_ID on, through the neighbours
+     * in turn.
+     */
+    private static void fill(RoutingTable table) {
+        for (int id = FIRST_DEST_ID; id < FIRST_DEST_ID + NUM_ROUTES; id++) {
+            table.addEntry(id, 2 + id % 14, nextHopOf(id));
+        }
+    }
+
+    /**
+     * Returns the next hop of the route which fill() adds to the given
+     * destination.
+     */
+    private static int nextHopOf(int destId) {
+        return NEIGHBOUR_IDS[destId % NEIGHBOUR_IDS.length];
+    }
+
+    /**
+     * Returns the index of the entry for the given destination in a
+     * snapshot, or -1 if there is none.
+     */
+    private static int indexOf(RoutingTableSnapshot snapshot, int destId) {
+        for (int i = 0; i < snapshot.numEntries(); i++) {
+            if (snapshot.destIdAt(i) == destId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Creates a table with no daemon for the given router and neighbours.
+     */
+    private static RoutingTable newTable(int routerId, Clock clock,
+                                         int... neighbourIds) {
+        ArrayList<int[]> outputs = new ArrayList<>();
+        for (int i = 0; i < neighbourIds.length; i++) {
+            outputs.add(new int[] {5000 + i, 1, neighbourIds[i]});
+        }
+        return new RoutingTable(null, routerId, clock, outputs,
+                TIMEOUT_PERIOD, GARBAGE_COLLECTION_PERIOD);
+    }
+}
@@ -0,0 +1,185 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Checks TimerWheel: that timers expire on time when they are further away
+ * than one revolution of the wheel, or when more than a revolution passes
+ * between calls to expire(), and that rescheduling, cancelling and moving
+ * timers leave no stale timers behind.
+ */
+public class TimerWheelChecks {
+    /**
+     * The tick length used by the checks, and the longest timer period, which
+     * gives a wheel of 8 buckets so that wrapping around is easy to reach.
+     */
+    private static final long TICK = 10;
+    private static final long MAX_PERIOD = 70;
+
+    /**
+     * The number of slots used by the randomised check.
+     */
+    private static final int SLOTS = 32;
+
+    static void run() {
+        checkWrapAround();
+        checkRescheduleAndCancel();
+        checkLongGap();
+        checkAgainstModel();
+    }
+
+    /**
+     * Schedules timers one, two and three revolutions ahead in the same
+     * bucket, and steps through time tick by tick, checking that each
+     * expires in the tick of its deadline and not on an earlier revolution.
+     */
+    private static void checkWrapAround() {
+        TimerWheel wheel = new TimerWheel(TICK, MAX_PERIOD, 4, 0);
+        long[] deadlines = {50, 130, 210};
+        for (int slot = 0; slot < deadlines.length; slot++) {
+            wheel.schedule(slot, deadlines[slot]);
+        }
+
+        long[] expiredAt = new long[deadlines.length];
+        for (long now = TICK; now <= 300; now += TICK) {
+            int numExpired = wheel.expire(now);
+            for (int i = 0; i < numExpired; i++) {
+                expiredAt[wheel.expiredSlot(i)] = now;
+            }
+        }
+
+        for (int slot = 0; slot < deadlines.length; slot++) {
+            Checks.checkEquals(deadlines[slot], expiredAt[slot],
+                    "TimerWheel expiry time of timer in a later revolution");
+        }
+        Checks.checkEquals(Long.MAX_VALUE, wheel.nanosUntilNextExpiry(300),
+                "TimerWheel time until next expiry with no timers");
+    }
+
+    /**
+     * Checks that a rescheduled timer only expires at its new deadline,
+     * whether that is earlier or later, and that a cancelled timer never
+     * expires.
+     */
+    private static void checkRescheduleAndCancel() {
+        TimerWheel wheel = new TimerWheel(TICK, MAX_PERIOD, 4, 0);
+        wheel.schedule(0, 40);
+        wheel.schedule(0, 120);
+        wheel.schedule(1, 60);
+        wheel.schedule(1, 20);
+        wheel.schedule(2, 30);
+        wheel.cancel(2);
+        wheel.cancel(2);
+
+        Checks.check(!wheel.isScheduled(2),
+                "TimerWheel cancelled timer is still scheduled");
+        Checks.checkEquals(20, wheel.nanosUntilNextExpiry(0),
+                "TimerWheel time until a rescheduled timer expires");
+
+        long[] expiredAt = new long[3];
+        for (long now = TICK; now <= 200; now += TICK) {
+            int numExpired = wheel.expire(now);
+            for (int i = 0; i < numExpired; i++) {
+                expiredAt[wheel.expiredSlot(i)] = now;
+            }
+        }
+        Checks.checkEquals(120, expiredAt[0],
+                "TimerWheel expiry time of timer rescheduled later");
+        Checks.checkEquals(20, expiredAt[1],
+                "TimerWheel expiry time of timer rescheduled earlier");
+        Checks.checkEquals(0, expiredAt[2],
+                "TimerWheel expiry time of cancelled timer");
+    }
+
+    /**
+     * Checks that when several revolutions pass between calls to expire(),
+     * every due timer is returned exactly once and later timers are kept.
+     */
+    private static void checkLongGap() {
+        TimerWheel wheel = new TimerWheel(TICK, MAX_PERIOD, 16, 0);
+        for (int slot = 0; slot < 16; slot++) {
+            wheel.schedule(slot, (slot + 1) * 20);
+        }
+
+        int numExpired = wheel.expire(255);
+        boolean[] seen = new boolean[16];
+        boolean duplicate = false;
+        for (int i = 0; i < numExpired; i++) {
+            int slot = wheel.expiredSlot(i);
+            duplicate |= seen[slot];
+            seen[slot] = true;
+        }
+        Checks.checkEquals(12, numExpired,
+                "TimerWheel timers expired after a gap of several revolutions");
+        Checks.check(!duplicate,
+                "TimerWheel timer expired twice after a long gap");
+        for (int slot = 0; slot < 16; slot++) {
+            Checks.check(seen[slot] == ((slot + 1) * 20 <= 255),
+                    "TimerWheel wrong timer expired after a long gap: " + slot);
+        }
+        Checks.checkEquals(4, wheel.expire(400),
+                "TimerWheel timers remaining after a long gap");
+    }
+
+    /**
+     * Applies a random sequence of schedules, cancels, moves and time steps,
+     * with deadlines and times on whole ticks, and checks that each call to
+     * expire() returns exactly the timers whose deadlines have passed.
+     */
+    private static void checkAgainstModel() {
+        Random random = new Random(2);
+        TimerWheel wheel = new TimerWheel(TICK, MAX_PERIOD, SLOTS, 0);
+        long[] model = new long[SLOTS];
+        Arrays.fill(model, -1);
+        long now = 0;
+
+        for (int step = 0; step < 100000; step++) {
+            int slot = random.nextInt(SLOTS);
+            int op = random.nextInt(10);
+            if (op < 5) {
+                long deadline = now + (random.nextInt(30) + 1) * TICK;
+                wheel.schedule(slot, deadline);
+                model[slot] = deadline;
+            } else if (op < 6) {
+                wheel.cancel(slot);
+                model[slot] = -1;
+            } else if (op < 7) {
+                int to = random.nextInt(SLOTS);
+                if (model[slot] >= 0 && model[to] < 0) {
+                    wheel.move(slot, to);
+                    model[to] = model[slot];
+                    model[slot] = -1;
+                }
+            } else {
+                now += random.nextInt(12) * TICK;
+                boolean[] expired = new boolean[SLOTS];
+                int numExpired = wheel.expire(now);
+                for (int i = 0; i < numExpired; i++) {
+                    expired[wheel.expiredSlot(i)] = true;
+                }
+
+                for (int s = 0; s < SLOTS; s++) {
+                    boolean due = model[s] >= 0 && model[s] <= now;
+                    if (expired[s] != due) {
+                        Checks.check(false, String.format("TimerWheel " +
+                                "slot %d %s at %d with deadline %d", s,
+                                due ? "did not expire" : "expired", now,
+                                model[s]));
+                        return;
+                    }
+                    if (due) {
+                        model[s] = -1;
+                    }
+                }
+            }
+
+            for (int s = 0; s < SLOTS; s++) {
+                if (wheel.isScheduled(s) != (model[s] >= 0)) {
+                    Checks.check(false, String.format("TimerWheel slot %d " +
+                            "scheduled state differs after step %d", s, step));
+                    return;
+                }
+            }
+        }
+        Checks.check(true, "TimerWheel matches model");
+    }
+}
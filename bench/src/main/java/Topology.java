@@ -0,0 +1,471 @@
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.PriorityQueue;
+import java.util.Random;
+
+/**
+ * An undirected graph of routers joined by links with a metric, which can be
+ * generated synthetically and written out as config files in the format read
+ * by ConfigFileParser. Each end of a link has its own input port, so a link
+ * can be failed by disconnecting its two ports.
+ */
+public class Topology {
+    /**
+     * The largest metric given to a link by the generators. Link metrics are
+     * chosen uniformly between 1 and this value.
+     */
+    private static final int MAX_LINK_METRIC = 5;
+
+    /**
+     * The router ID and output port of each router, as [routerId, outputPort].
+     */
+    private ArrayList<int[]> routers = new ArrayList<>();
+
+    /**
+     * The index of each router in routers, keyed by router ID.
+     */
+    private HashMap<Integer, Integer> indexOf = new HashMap<>();
+
+    /**
+     * The links of the topology, in the form [indexA, indexB, metric, portA,
+     * portB], where portA is the input port at router A for packets from B.
+     */
+    private ArrayList<int[]> links = new ArrayList<>();
+
+    /**
+     * The shared segments of the topology, each in the form [port, index,
+     * index, ...], where port is the segment's multicast port and the
+     * routers on it are all linked to each other.
+     */
+    private ArrayList<int[]> segments = new ArrayList<>();
+
+    /**
+     * The next unused port number.
+     */
+    private int nextPort = RIPDaemon.MIN_PORT_NO;
+
+    /**
+     * Generates a ring of routers, each linked to the next.
+     * @param numRouters    The number of routers, at least 3.
+     * @param random        Source of the link metrics.
+     * @return              The ring topology.
+     */
+    public static Topology ring(int numRouters, Random random) {
+        Topology topology = new Topology(numRouters);
+        for (int i = 0; i < numRouters; i++) {
+            topology.addLink(i, (i + 1) % numRouters, random);
+        }
+        return topology;
+    }
+
+    /**
+     * Generates a rectangular grid of routers, each linked to the routers
+     * above, below and on either side of it.
+     * @param width     The number of routers in each row.
+     * @param height    The number of rows.
+     * @param random    Source of the link metrics.
+     * @return          The grid topology.
+     */
+    public static Topology grid(int width, int height, Random random) {
+        Topology topology = new Topology(width * height);
+        for (int row = 0; row < height; row++) {
+            for (int column = 0; column < width; column++) {
+                int i = row * width + column;
+                if (column + 1 < width) {
+                    topology.addLink(i, i + 1, random);
+                }
+                if (row + 1 < height) {
+                    topology.addLink(i, i + width, random);
+                }
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * Generates an Erdős–Rényi random graph, in which each pair of routers is
+     * linked with the same probability. Any router left without a link is
+     * linked to another random router, since every router needs at least one
+     * neighbour.
+     * @param numRouters    The number of routers, at least 2.
+     * @param meanDegree    The expected number of links per router.
+     * @param random        Source of the links and their metrics.
+     * @return              The random topology.
+     */
+    public static Topology erdosRenyi(int numRouters, double meanDegree,
+                                      Random random) {
+        Topology topology = new Topology(numRouters);
+        double probability = meanDegree / (numRouters - 1);
+        int[] degrees = new int[numRouters];
+
+        for (int a = 0; a < numRouters; a++) {
+            for (int b = a + 1; b < numRouters; b++) {
+                if (random.nextDouble() < probability) {
+                    topology.addLink(a, b, random);
+                    degrees[a]++;
+                    degrees[b]++;
+                }
+            }
+        }
+
+        for (int a = 0; a < numRouters; a++) {
+            if (degrees[a] == 0) {
+                int b = (a + 1 + random.nextInt(numRouters - 1)) % numRouters;
+                topology.addLink(a, b, random);
+                degrees[a]++;
+                degrees[b]++;
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * Generates a scale-free graph using the Barabási–Albert model: starting
+     * from a small fully-connected core, each new router is linked to
+     * existing routers chosen with probability proportional to their degree.
+     * @param numRouters        The number of routers, more than linksPerRouter.
+     * @param linksPerRouter    The number of links added with each new router.
+     * @param random            Source of the links and their metrics.
+     * @return                  The scale-free topology.
+     */
+    public static Topology scaleFree(int numRouters, int linksPerRouter,
+                                     Random random) {
+        Topology topology = new Topology(numRouters);
+
+        // Each router appears in this list once for each of its links, so a
+        // uniformly chosen element picks a router in proportion to its degree.
+        ArrayList<Integer> linkEnds = new ArrayList<>();
+        for (int a = 0; a <= linksPerRouter; a++) {
+            for (int b = a + 1; b <= linksPerRouter; b++) {
+                topology.addLink(a, b, random);
+                linkEnds.add(a);
+                linkEnds.add(b);
+            }
+        }
+
+        HashSet<Integer> targets = new HashSet<>();
+        for (int a = linksPerRouter + 1; a < numRouters; a++) {
+            targets.clear();
+            while (targets.size() < linksPerRouter) {
+                targets.add(linkEnds.get(random.nextInt(linkEnds.size())));
+            }
+            for (int b : targets) {
+                topology.addLink(a, b, random);
+                linkEnds.add(a);
+                linkEnds.add(b);
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * Generates a chain of LANs. The routers on each LAN are all linked to
+     * each other with a metric of 1 and share a segment, and each LAN is
+     * linked to the next through a random router on each.
+     * @param numRouters    The number of routers, at least 2.
+     * @param lanSize       The number of routers on each LAN, at least 2. The
+     *                      last LAN may be smaller.
+     * @param random        Source of the links between LANs and their metrics.
+     * @return              The LAN topology.
+     */
+    public static Topology lans(int numRouters, int lanSize, Random random) {
+        Topology topology = new Topology(numRouters);
+        for (int start = 0; start < numRouters; start += lanSize) {
+            int end = Math.min(start + lanSize, numRouters);
+            int[] segment = new int[end - start + 1];
+            segment[0] = topology.allocatePort();
+            for (int a = start; a < end; a++) {
+                segment[a - start + 1] = a;
+                for (int b = a + 1; b < end; b++) {
+                    topology.addLink(a, b, 1);
+                }
+            }
+            topology.segments.add(segment);
+
+            if (start > 0) {
+                topology.addLink(start - lanSize + random.nextInt(lanSize),
+                        start + random.nextInt(end - start), random);
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * Builds the topology described by a set of parsed config files, keeping
+     * their router IDs, ports and metrics. Where the two ends of a link give
+     * it different metrics, the metric from the router with the lower ID is
+     * used.
+     * @param configs   The parsed config files of every router.
+     * @return          The topology of the config files.
+     */
+    public static Topology fromConfigs(ArrayList<ConfigFileParser> configs) {
+        Topology topology = new Topology(0);
+        for (ConfigFileParser config : configs) {
+            topology.indexOf.put(config.getRouterId(),
+                    topology.routers.size());
+            topology.routers.add(new int[] {config.getRouterId(),
+                    config.getOutputPort()});
+            topology.reservePort(config.getOutputPort());
+        }
+
+        // Each link is seen from both ends. Its entry in a router's outputs
+        // gives the input port at the neighbour.
+        HashMap<Long, int[]> linksByEnds = new HashMap<>();
+        for (ConfigFileParser config : configs) {
+            int self = topology.indexOf.get(config.getRouterId());
+            for (int[] output : config.getOutputs()) {
+                Integer neighbour = topology.indexOf.get(output[2]);
+                if (neighbour == null) {
+                    Error.error(String.format("Router %d has a neighbour " +
+                            "%d with no config file.", config.getRouterId(),
+                            output[2]));
+                }
+
+                int a = Math.min(self, neighbour);
+                int b = Math.max(self, neighbour);
+                long key = (long) a << 32 | b;
+                int[] link = linksByEnds.get(key);
+                if (link == null) {
+                    link = new int[] {a, b, output[1], 0, 0};
+                    linksByEnds.put(key, link);
+                    topology.links.add(link);
+                }
+
+                if (self == a) {
+                    link[4] = output[0];
+                } else {
+                    link[3] = output[0];
+                }
+                topology.reservePort(output[0]);
+            }
+        }
+        return topology;
+    }
+
+    /**
+     * Creates a topology with the given number of routers and no links. The
+     * routers have IDs starting from 1.
+     */
+    private Topology(int numRouters) {
+        for (int i = 0; i < numRouters; i++) {
+            if (i + 1 > RIPDaemon.MAX_ROUTER_ID) {
+                Error.error("Topology has too many routers.");
+            }
+            indexOf.put(i + 1, i);
+            routers.add(new int[] {i + 1, allocatePort()});
+        }
+    }
+
+    /**
+     * Links two routers with a random metric, giving each end a new input
+     * port.
+     */
+    private void addLink(int a, int b, Random random) {
+        addLink(a, b, 1 + random.nextInt(MAX_LINK_METRIC));
+    }
+
+    /**
+     * Links two routers with the given metric, giving each end a new input
+     * port.
+     */
+    private void addLink(int a, int b, int metric) {
+        links.add(new int[] {a, b, metric, allocatePort(), allocatePort()});
+    }
+
+    /**
+     * Returns an unused port number.
+     */
+    private int allocatePort() {
+        if (nextPort > RIPDaemon.MAX_PORT_NO) {
+            Error.error("Topology has too many links to give each a port.");
+        }
+        return nextPort++;
+    }
+
+    /**
+     * Makes sure that a port number already in use is never allocated.
+     */
+    private void reservePort(int port) {
+        nextPort = Math.max(nextPort, port + 1);
+    }
+
+    /**
+     * Returns the number of routers in the topology.
+     * @return  The number of routers.
+     */
+    public int numRouters() {
+        return routers.size();
+    }
+
+    /**
+     * Returns the router ID of a router.
+     * @param index     The index of the router, between 0 and numRouters() - 1.
+     * @return          The router's ID.
+     */
+    public int routerId(int index) {
+        return routers.get(index)[0];
+    }
+
+    /**
+     * Returns the number of links in the topology.
+     * @return  The number of links.
+     */
+    public int numLinks() {
+        return links.size();
+    }
+
+    /**
+     * Returns the two input ports at either end of a link. Packets sent over
+     * the link in either direction are dropped once both are disconnected.
+     * @param link  The index of the link, between 0 and numLinks() - 1.
+     * @return      The link's ports.
+     */
+    public int[] linkPorts(int link) {
+        return new int[] {links.get(link)[3], links.get(link)[4]};
+    }
+
+    /**
+     * Returns the number of shared segments in the topology.
+     * @return  The number of segments.
+     */
+    public int numSegments() {
+        return segments.size();
+    }
+
+    /**
+     * Writes a config file for each router to the given directory, named
+     * after its router ID, in the same order as the routers are indexed.
+     * @param directory     The directory to write the files to.
+     * @param updatePeriod  The update period of every router in seconds.
+     * @param useSegments   Whether routers on a shared segment send it a
+     *                      single multicast update, rather than an update to
+     *                      each neighbour on it.
+     * @return              The paths of the files written.
+     */
+    public ArrayList<String> writeConfigs(File directory, int updatePeriod,
+                                          boolean useSegments) {
+        ArrayList<StringBuilder> inputPorts = new ArrayList<>();
+        ArrayList<StringBuilder> outputs = new ArrayList<>();
+        for (int i = 0; i < routers.size(); i++) {
+            inputPorts.add(new StringBuilder());
+            outputs.add(new StringBuilder());
+        }
+
+        for (int[] link : links) {
+            inputPorts.get(link[0]).append(' ').append(link[3]);
+            inputPorts.get(link[1]).append(' ').append(link[4]);
+            outputs.get(link[0]).append(String.format(" %d-%d-%d", link[4],
+                    link[2], routerId(link[1])));
+            outputs.get(link[1]).append(String.format(" %d-%d-%d", link[3],
+                    link[2], routerId(link[0])));
+        }
+
+        // Each segment gets its own multicast group, although only its port
+        // is used by the in-memory network.
+        ArrayList<StringBuilder> segmentLines = new ArrayList<>();
+        for (int i = 0; i < routers.size(); i++) {
+            segmentLines.add(new StringBuilder());
+        }
+        for (int s = 0; useSegments && s < segments.size(); s++) {
+            int[] segment = segments.get(s);
+            String group = String.format("239.1.%d.%d:%d", (s >> 8) & 255,
+                    s & 255, segment[0]);
+            for (int i = 1; i < segment.length; i++) {
+                StringBuilder line = segmentLines.get(segment[i]);
+                line.append(' ').append(group).append('/');
+                String separator = "";
+                for (int j = 1; j < segment.length; j++) {
+                    if (j != i) {
+                        line.append(separator).append(routerId(segment[j]));
+                        separator = ",";
+                    }
+                }
+            }
+        }
+
+        ArrayList<String> filenames = new ArrayList<>();
+        for (int i = 0; i < routers.size(); i++) {
+            File file = new File(directory, routerId(i) + ".conf");
+            try (PrintWriter writer = new PrintWriter(file)) {
+                writer.println(String.format("// Generated configuration " +
+                        "file for router %d.", routerId(i)));
+                writer.println();
+                writer.println("router-id " + routerId(i));
+                writer.println("input-ports" + inputPorts.get(i));
+                writer.println("outputs" + outputs.get(i));
+                writer.println("output-port " + routers.get(i)[1]);
+                if (segmentLines.get(i).length() > 0) {
+                    writer.println("segments" + segmentLines.get(i));
+                }
+                writer.println("update-period " + updatePeriod);
+                writer.println("table-display off");
+            } catch (FileNotFoundException e) {
+                Error.error("Could not write config file " + file);
+            }
+            filenames.add(file.getPath());
+        }
+        return filenames;
+    }
+
+    /**
+     * Finds the metric of the shortest path from one router to every other,
+     * as RIP should converge to. Paths with a metric of infinity or more are
+     * unreachable.
+     * @param source        The index of the router to start from.
+     * @param failedLink    The index of a link to leave out, or -1.
+     * @param failedRouter  The index of a router to leave out, or -1.
+     * @return  The metric to each router by index, capped at infinity. The
+     *          failed router is always unreachable.
+     */
+    public int[] shortestMetrics(int source, int failedLink, int failedRouter) {
+        int numRouters = routers.size();
+        int[] metrics = new int[numRouters];
+        Arrays.fill(metrics, RIPDaemon.INFINITY);
+        if (source == failedRouter) {
+            return metrics;
+        }
+
+        // Adjacency lists of [neighbour, metric], leaving out the failures.
+        ArrayList<ArrayList<int[]>> adjacent = new ArrayList<>();
+        for (int i = 0; i < numRouters; i++) {
+            adjacent.add(new ArrayList<int[]>());
+        }
+        for (int i = 0; i < links.size(); i++) {
+            int[] link = links.get(i);
+            if (i == failedLink || link[0] == failedRouter ||
+                    link[1] == failedRouter) {
+                continue;
+            }
+            adjacent.get(link[0]).add(new int[] {link[1], link[2]});
+            adjacent.get(link[1]).add(new int[] {link[0], link[2]});
+        }
+
+        // Dijkstra's algorithm, with each queue entry holding a metric in the
+        // high bits and a router index in the low bits.
+        PriorityQueue<Long> queue = new PriorityQueue<>();
+        metrics[source] = 0;
+        queue.add((long) source);
+        while (!queue.isEmpty()) {
+            long entry = queue.poll();
+            int router = (int) entry;
+            int metric = (int) (entry >>> 32);
+            if (metric > metrics[router]) {
+                continue;
+            }
+
+            for (int[] neighbour : adjacent.get(router)) {
+                int newMetric = metric + neighbour[1];
+                if (newMetric < metrics[neighbour[0]]) {
+                    metrics[neighbour[0]] = newMetric;
+                    queue.add((long) newMetric << 32 | neighbour[0]);
+                }
+            }
+        }
+        return metrics;
+    }
+}
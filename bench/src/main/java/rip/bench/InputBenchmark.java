@@ -0,0 +1,40 @@
+package rip.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks processing received response packets and their entries.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class InputBenchmark {
+    @Param({"10", "1000", "10000", "60000"})
+    private int routes;
+
+    @Param({"1", "10", "100", "1000"})
+    private int neighbours;
+
+    private RipHarness harness;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        harness = RipHarness.create();
+        harness.setUp(routes, neighbours);
+    }
+
+    @Benchmark
+    public void processPacket() {
+        harness.processPacket();
+    }
+
+    @Benchmark
+    public void processEntry() {
+        harness.processEntry();
+    }
+}
@@ -0,0 +1,36 @@
+package rip.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmarks encoding a full update of the routing table for every
+ * neighbour, with split horizon and poison reverse applied per neighbour.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OutputBenchmark {
+    @Param({"10", "1000", "10000", "60000"})
+    private int routes;
+
+    @Param({"1", "10", "100", "1000"})
+    private int neighbours;
+
+    private RipHarness harness;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        harness = RipHarness.create();
+        harness.setUp(routes, neighbours);
+    }
+
+    @Benchmark
+    public int createResponseMessages() {
+        return harness.encodeUpdates();
+    }
+}
@@ -0,0 +1,64 @@
+package rip.bench;
+
+/**
+ * The operations on the RIP daemon which are benchmarked.
+ *
+ * The daemon's classes are in the default package, which JMH does not allow
+ * benchmarks to be in and which other packages cannot import. The benchmarks
+ * therefore reach the daemon through this interface, which is implemented by
+ * BenchmarkHarness in the default package.
+ */
+public interface RipHarness {
+    /**
+     * Builds a routing table with the given number of routes and neighbours,
+     * along with the Input and Output objects to benchmark.
+     * @param numRoutes     The number of routes in the table. There is always
+     *                      at least one route per neighbour. Every route has
+     *                      a valid router ID, so at most
+     *                      RIPDaemon.MAX_ROUTER_ID - 1 routes can be used.
+     * @param numNeighbours The number of neighbours of the router.
+     */
+    void setUp(int numRoutes, int numNeighbours);
+
+    /**
+     * Processes a full-size response packet from a neighbour which
+     * re-advertises routes the table already has through that neighbour.
+     */
+    void processPacket();
+
+    /**
+     * Processes a single RIP entry from a neighbour.
+     */
+    void processEntry();
+
+    /**
+     * Encodes a full update of the routing table for every neighbour.
+     * @return  The total number of bytes encoded.
+     */
+    int encodeUpdates();
+
+    /**
+     * Checks the route timers, when none of them have expired.
+     */
+    void checkTimers();
+
+    /**
+     * Renders the full routing table.
+     * @return  The rendered table.
+     */
+    String renderTable();
+
+    /**
+     * Creates the harness implementation.
+     * @return  A new harness, which needs to be set up before use.
+     */
+    static RipHarness create() {
+        try {
+            return (RipHarness) Class.forName("BenchmarkHarness")
+                    .getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Could not create the benchmark " +
+                    "harness", e);
+        }
+    }
+}
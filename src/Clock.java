@@ -0,0 +1,24 @@
+/**
+ * A source of monotonic time for the daemon's timers. All times are in
+ * nanoseconds relative to an arbitrary fixed origin, so they are only
+ * meaningful when compared with other times from the same clock, and should
+ * be compared by subtraction (a - b > 0) rather than with a > b, so that
+ * comparisons stay correct if the value ever overflows.
+ */
+public interface Clock {
+    /**
+     * Number of nanoseconds in a second.
+     */
+    long NANOS_PER_SECOND = 1000000000L;
+
+    /**
+     * Number of nanoseconds in a millisecond.
+     */
+    long NANOS_PER_MILLI = 1000000L;
+
+    /**
+     * Returns the current time of this clock.
+     * @return  The current time in nanoseconds.
+     */
+    long nanoTime();
+}
@@ -1,5 +1,10 @@
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.UnknownHostException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Scanner;
@@ -15,14 +20,35 @@ public class ConfigFileParser {
      */
     private String filename;
 
+    /**
+     * Whether an invalid config file terminates the program, as it should
+     * at startup, or just makes tryParseFile() return false.
+     */
+    private boolean exitOnError = true;
+
+    /**
+     * The reason the config file was invalid, if tryParseFile() failed.
+     */
+    private String errorMessage = null;
+
     /**
      * The values read from the config file.
      */
     private int routerId;
     private ArrayList<Integer> inputPorts = new ArrayList<>();
     private ArrayList<int[]> outputs = new ArrayList<>();
+    private ArrayList<InetAddress> outputAddresses = new ArrayList<>();
+    private ArrayList<Segment> segments = new ArrayList<>();
     private int outputPort;
     private int updatePeriod;
+    private Log.Level logLevel = Log.Level.INFO;
+    private RoutingTable.DisplayMode tableDisplay =
+            RoutingTable.DisplayMode.FULL;
+    private int inputThreads = 1;
+    private int receiveBudget = RIPDaemon.DEFAULT_RECEIVE_BUDGET;
+    private int outputSpread = 0;
+    private int outputRate = 0;
+    private String stateFile = null;
 
     /**
      * Flags to keep track of whether each parameter has been read yet,
@@ -33,6 +59,14 @@ public class ConfigFileParser {
     private boolean outputsSet = false;
     private boolean outputPortSet = false;
     private boolean updatePeriodSet = false;
+    private boolean logLevelSet = false;
+    private boolean tableDisplaySet = false;
+    private boolean inputThreadsSet = false;
+    private boolean receiveBudgetSet = false;
+    private boolean outputSpreadSet = false;
+    private boolean outputRateSet = false;
+    private boolean stateFileSet = false;
+    private boolean segmentsSet = false;
 
     /**
      * Create a new ConfigFileParser to parse the given file.
@@ -67,6 +101,28 @@ public class ConfigFileParser {
         return outputs;
     }
 
+    /**
+     * Get the address of each output's router, in the same order as the list
+     * returned by getOutputs(). An address is null if the output did not
+     * give a host, meaning that the router is on the local host. Host names
+     * are resolved once, while parsing the file.
+     * Should be called after parsing the file.
+     * @return  List of output addresses.
+     */
+    public ArrayList<InetAddress> getOutputAddresses() {
+        return outputAddresses;
+    }
+
+    /**
+     * Get the shared segments joining this router to some of its neighbours.
+     * If none were specified in the config file, returns an empty list.
+     * Should be called after parsing the file.
+     * @return  List of segments.
+     */
+    public ArrayList<Segment> getSegments() {
+        return segments;
+    }
+
     /**
      * Get the output port number. Should be called after parsing the file.
      * @return  Output port number.
@@ -89,65 +145,220 @@ public class ConfigFileParser {
         }
     }
 
+    /**
+     * Get the log level. If it was not specified in the config file, returns
+     * the default level of INFO.
+     * Should be called after parsing the file.
+     * @return  Log level.
+     */
+    public Log.Level getLogLevel() {
+        return logLevel;
+    }
+
+    /**
+     * Get the routing table display mode. If it was not specified in the
+     * config file, returns the default mode of FULL.
+     * Should be called after parsing the file.
+     * @return  Routing table display mode.
+     */
+    public RoutingTable.DisplayMode getTableDisplay() {
+        return tableDisplay;
+    }
+
+    /**
+     * Get the number of threads to receive packets on. If it was not
+     * specified in the config file, returns the default of 1, meaning that
+     * packets are received on the daemon's own thread.
+     * Should be called after parsing the file.
+     * @return  Number of input threads.
+     */
+    public int getInputThreads() {
+        return inputThreads;
+    }
+
+    /**
+     * Get the most packets to receive from each input socket every time the
+     * daemon or an input thread wakes up, before moving on to the other
+     * sockets. If it was not specified in the config file, returns the
+     * default of RIPDaemon.DEFAULT_RECEIVE_BUDGET.
+     * Should be called after parsing the file.
+     * @return  Receive budget in packets.
+     */
+    public int getReceiveBudget() {
+        return receiveBudget;
+    }
+
+    /**
+     * Get the window to spread each round of periodic updates over, as a
+     * percentage of the update period. If it was not specified in the config
+     * file, returns the default of 0, meaning that periodic updates are sent
+     * to every neighbour at once.
+     * Should be called after parsing the file.
+     * @return  Output spread percentage.
+     */
+    public int getOutputSpread() {
+        return outputSpread;
+    }
+
+    /**
+     * Get the most bytes to send per second. If it was not specified in the
+     * config file, returns the default of 0, meaning no limit.
+     * Should be called after parsing the file.
+     * @return  Output rate in bytes per second.
+     */
+    public int getOutputRate() {
+        return outputRate;
+    }
+
+    /**
+     * Get the path of the file which the routing table is saved to, so that
+     * it can be restored when the daemon restarts. If it was not specified
+     * in the config file, returns null, meaning that the table is not saved.
+     * Should be called after parsing the file.
+     * @return  State file path, or null.
+     */
+    public String getStateFile() {
+        return stateFile;
+    }
+
+    /**
+     * Tries to parse the config file without terminating the program if it
+     * is invalid, as when reloading the config file of a running router.
+     * @return  True if the file was parsed, false if it doesn't exist or has
+     *          an invalid format, in which case getErrorMessage() says why.
+     */
+    public boolean tryParseFile() {
+        this.exitOnError = false;
+        try {
+            parseFile();
+            return true;
+        } catch (InvalidConfigException e) {
+            this.errorMessage = e.getMessage();
+            return false;
+        }
+    }
+
+    /**
+     * Get the reason the config file could not be parsed by tryParseFile().
+     * @return  The error message, or null if there was no error.
+     */
+    public String getErrorMessage() {
+        return errorMessage;
+    }
+
+    /**
+     * Replaces the parameters which a running daemon cannot change with the
+     * values it is actually running with, once a reloaded config has been
+     * applied, so that later reloads are compared against the right values.
+     * @param running       The config the daemon was running with.
+     * @param inputPorts    The input ports which are actually open.
+     */
+    void keepUnreloadable(ConfigFileParser running,
+                          ArrayList<Integer> inputPorts) {
+        this.routerId = running.routerId;
+        this.outputPort = running.outputPort;
+        this.updatePeriod = running.updatePeriod;
+        this.updatePeriodSet = running.updatePeriodSet;
+        this.inputThreads = running.inputThreads;
+        this.receiveBudget = running.receiveBudget;
+        this.segments = running.segments;
+        this.outputSpread = running.outputSpread;
+        this.outputRate = running.outputRate;
+        this.stateFile = running.stateFile;
+        this.inputPorts = inputPorts;
+    }
+
     /**
      * Tries to parse the given config file. If the file doesn't exist or has
      * an invalid format, prints an error message and terminates the program.
      */
     public void parseFile() {
-        try {
-            Scanner sc = new Scanner(new File(this.filename));
+        try (Scanner sc = new Scanner(new File(this.filename))) {
             while (sc.hasNextLine()) {
                 parseLine(sc.nextLine());
             }
-            sc.close();
 
         } catch (FileNotFoundException e) {
-            Error.error("Given configuration file doesn't exist.");
+            error("Given configuration file doesn't exist.");
         }
 
         // Check that the config file specified all the mandatory parameters
-        // (the update-period parameter is optional).
+        // (the update-period, log-level, table-display, input-threads,
+        // receive-budget, segments, output-spread, output-rate and state-file
+        // parameters are optional).
         if (!routerIdSet) {
-            Error.error("Invalid config file: missing router-id.");
+            error("Invalid config file: missing router-id.");
         }
 
         if (!inputPortsSet) {
-            Error.error("Invalid config file: missing input-ports.");
+            error("Invalid config file: missing input-ports.");
         }
 
         if (!outputsSet) {
-            Error.error("Invalid config file: missing outputs.");
+            error("Invalid config file: missing outputs.");
         }
 
         if (!outputPortSet) {
-            Error.error("Invalid config file: missing output port.");
+            error("Invalid config file: missing output port.");
         }
 
-        // Check that the neighbours' port numbers are all different from this
-        // router's input port numbers and output port number, and that the
-        // neighbours' router IDs are all different from this router's ID.
-        for (int[] output : this.outputs) {
+        // Check that the port numbers of neighbours on this host are all
+        // different from this router's input port numbers and output port
+        // number, and that the neighbours' router IDs are all different from
+        // this router's ID.
+        for (int i = 0; i < this.outputs.size(); i++) {
+            int[] output = this.outputs.get(i);
+            if (this.routerId == output[2]) {
+                error("Invalid config file: output router " +
+                        "IDs must be different from router-id.");
+            }
+
+            if (!isLocalAddress(this.outputAddresses.get(i))) {
+                continue;
+            }
+
             if (this.inputPorts.contains(output[0])) {
-                Error.error("Invalid config file: neighbours' port " +
+                error("Invalid config file: neighbours' port " +
                         "numbers must be different from input port numbers.");
             }
 
             if (output[0] == this.outputPort) {
-                Error.error("Invalid config file: neighbours' port " +
+                error("Invalid config file: neighbours' port " +
                         "numbers must be different from this router's output " +
                         "port number.");
             }
+        }
 
-            if (this.routerId == output[2]) {
-                Error.error("Invalid config file: output router " +
-                        "IDs must be different from router-id.");
+        // Check that every neighbour on a segment is one of the outputs, and
+        // is on only one segment, and that segment ports are different from
+        // this router's own ports.
+        ArrayList<Integer> segmentNeighbours = new ArrayList<>();
+        for (Segment segment : this.segments) {
+            int port = segment.getGroup().getPort();
+            if (this.inputPorts.contains(port) || port == this.outputPort) {
+                error("Invalid config file: segment port numbers " +
+                        "must be different from input and output port " +
+                        "numbers.");
+            }
+
+            for (int id : segment.getNeighbourIds()) {
+                if (!isOutputRouterId(id)) {
+                    error(String.format("Invalid config file: " +
+                            "segment neighbour %d is not one of the " +
+                            "outputs.", id));
+                }
+                if (segmentNeighbours.contains(id)) {
+                    error(String.format("Invalid config file: " +
+                            "neighbour %d is on more than one segment.", id));
+                }
+                segmentNeighbours.add(id);
             }
         }
 
         // Check that this router's output port number is different from its
         // input port numbers.
         if (this.inputPorts.contains(this.outputPort)) {
-            Error.error("Invalid config file: output port number " +
+            error("Invalid config file: output port number " +
                     "must be different from input port numbers.");
         }
     }
@@ -169,7 +380,7 @@ public class ConfigFileParser {
 
         if (parameter.equals("router-id")) {
             if (this.routerIdSet) {
-                Error.error("Invalid config file: router-id defined " +
+                error("Invalid config file: router-id defined " +
                         "more than once.");
             } else {
                 parseRouterId(Arrays.copyOfRange(tokens,1, tokens.length));
@@ -177,7 +388,7 @@ public class ConfigFileParser {
 
         } else if (parameter.equals("input-ports")) {
             if (this.inputPortsSet) {
-                Error.error("Invalid config file: input-ports defined " +
+                error("Invalid config file: input-ports defined " +
                         "more than once.");
             } else {
                 parseInputPorts(Arrays.copyOfRange(tokens,1, tokens.length));
@@ -185,7 +396,7 @@ public class ConfigFileParser {
 
         } else if (parameter.equals("outputs")) {
             if (this.outputsSet) {
-                Error.error("Invalid config file: outputs defined " +
+                error("Invalid config file: outputs defined " +
                         "more than once.");
             } else {
                 parseOutputs(Arrays.copyOfRange(tokens, 1, tokens.length));
@@ -193,7 +404,7 @@ public class ConfigFileParser {
 
         } else if (parameter.equals("output-port")) {
             if (this.outputPortSet) {
-                Error.error("Invalid config file: output port defined " +
+                error("Invalid config file: output port defined " +
                         "more than once.");
             } else {
                 parseOutputPort(Arrays.copyOfRange(tokens, 1, tokens.length));
@@ -201,14 +412,83 @@ public class ConfigFileParser {
 
         } else if (parameter.equals("update-period")) {
             if (this.updatePeriodSet) {
-                Error.error("Invalid config file: update-period defined " +
+                error("Invalid config file: update-period defined " +
                         "more than once.");
             } else {
                 parseUpdatePeriod(Arrays.copyOfRange(tokens, 1, tokens.length));
             }
 
+        } else if (parameter.equals("log-level")) {
+            if (this.logLevelSet) {
+                error("Invalid config file: log-level defined " +
+                        "more than once.");
+            } else {
+                parseLogLevel(Arrays.copyOfRange(tokens, 1, tokens.length));
+            }
+
+        } else if (parameter.equals("table-display")) {
+            if (this.tableDisplaySet) {
+                error("Invalid config file: table-display defined " +
+                        "more than once.");
+            } else {
+                parseTableDisplay(Arrays.copyOfRange(tokens, 1,
+                        tokens.length));
+            }
+
+        } else if (parameter.equals("input-threads")) {
+            if (this.inputThreadsSet) {
+                error("Invalid config file: input-threads defined " +
+                        "more than once.");
+            } else {
+                parseInputThreads(Arrays.copyOfRange(tokens, 1,
+                        tokens.length));
+            }
+
+        } else if (parameter.equals("receive-budget")) {
+            if (this.receiveBudgetSet) {
+                error("Invalid config file: receive-budget defined " +
+                        "more than once.");
+            } else {
+                parseReceiveBudget(Arrays.copyOfRange(tokens, 1,
+                        tokens.length));
+            }
+
+        } else if (parameter.equals("segments")) {
+            if (this.segmentsSet) {
+                error("Invalid config file: segments defined " +
+                        "more than once.");
+            } else {
+                parseSegments(Arrays.copyOfRange(tokens, 1, tokens.length));
+            }
+
+        } else if (parameter.equals("output-spread")) {
+            if (this.outputSpreadSet) {
+                error("Invalid config file: output-spread defined " +
+                        "more than once.");
+            } else {
+                parseOutputSpread(Arrays.copyOfRange(tokens, 1,
+                        tokens.length));
+            }
+
+        } else if (parameter.equals("output-rate")) {
+            if (this.outputRateSet) {
+                error("Invalid config file: output-rate defined " +
+                        "more than once.");
+            } else {
+                parseOutputRate(Arrays.copyOfRange(tokens, 1,
+                        tokens.length));
+            }
+
+        } else if (parameter.equals("state-file")) {
+            if (this.stateFileSet) {
+                error("Invalid config file: state-file defined " +
+                        "more than once.");
+            } else {
+                parseStateFile(Arrays.copyOfRange(tokens, 1, tokens.length));
+            }
+
         } else {
-            Error.error(String.format(
+            error(String.format(
                     "Invalid config file: %s is not a valid parameter",
                     parameter));
         }
@@ -280,6 +560,20 @@ public class ConfigFileParser {
         }
 
         for (String token : tokens) {
+            // An output may start with the host of the neighbour, separated
+            // from the rest by the last colon. IPv6 addresses must be given
+            // in square brackets.
+            InetAddress address = null;
+            int hostEnd = token.lastIndexOf(':');
+            if (hostEnd >= 0) {
+                address = resolveHost(token.substring(0, hostEnd),
+                        "output host");
+                if (address == null) {
+                    outputsError();
+                }
+                token = token.substring(hostEnd + 1);
+            }
+
             String[] outputTokens = token.split("-");
             if (outputTokens.length != 3) {
                 outputsError();
@@ -300,7 +594,7 @@ public class ConfigFileParser {
             // Check that input port of neighbour is in the right range.
             int neighbourInputPort = outputValues[0];
             if (!isValidPortNo(neighbourInputPort)) {
-                Error.error(String.format("Invalid config file: " +
+                error(String.format("Invalid config file: " +
                         "port numbers of outputs must be " +
                         "between %d and %d.",
                         RIPDaemon.MIN_PORT_NO,
@@ -310,7 +604,7 @@ public class ConfigFileParser {
             // Check that router ID of neighbour is in the right range.
             int neighbourId = outputValues[2];
             if (!isValidRouterID(neighbourId)) {
-                Error.error(String.format("Invalid confing file: " +
+                error(String.format("Invalid confing file: " +
                         "router IDs of outputs must be " +
                         "between %d and %d.",
                         RIPDaemon.MIN_ROUTER_ID,
@@ -319,6 +613,7 @@ public class ConfigFileParser {
 
             // If the output values are valid, add them to the list of outputs.
             this.outputs.add(outputValues);
+            this.outputAddresses.add(address);
         }
 
         this.outputsSet = true;
@@ -376,6 +671,276 @@ public class ConfigFileParser {
         this.updatePeriodSet = true;
     }
 
+    /**
+     * Takes the list of the tokens following "log-level" in a line of the
+     * config file and extracts the log level.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseLogLevel(String[] tokens) {
+        if (tokens.length != 1) {
+            logLevelError();
+        }
+
+        try {
+            this.logLevel = Log.Level.valueOf(tokens[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logLevelError();
+        }
+
+        this.logLevelSet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "table-display" in a line of the
+     * config file and extracts the routing table display mode.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseTableDisplay(String[] tokens) {
+        if (tokens.length != 1) {
+            tableDisplayError();
+        }
+
+        try {
+            this.tableDisplay = RoutingTable.DisplayMode.valueOf(
+                    tokens[0].toUpperCase());
+        } catch (IllegalArgumentException e) {
+            tableDisplayError();
+        }
+
+        this.tableDisplaySet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "input-threads" in a line of the
+     * config file and extracts the number of input threads.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseInputThreads(String[] tokens) {
+        if (tokens.length != 1) {
+            inputThreadsError();
+        }
+
+        try {
+            int threads = Integer.parseInt(tokens[0]);
+            if (threads > 0) {
+                this.inputThreads = threads;
+            } else {
+                inputThreadsError();
+            }
+
+        } catch (NumberFormatException e) {
+            inputThreadsError();
+        }
+
+        this.inputThreadsSet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "receive-budget" in a line of
+     * the config file and extracts the receive budget.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseReceiveBudget(String[] tokens) {
+        if (tokens.length != 1) {
+            receiveBudgetError();
+        }
+
+        try {
+            int budget = Integer.parseInt(tokens[0]);
+            if (budget > 0) {
+                this.receiveBudget = budget;
+            } else {
+                receiveBudgetError();
+            }
+
+        } catch (NumberFormatException e) {
+            receiveBudgetError();
+        }
+
+        this.receiveBudgetSet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "segments" in a line of the
+     * config file and extracts the segments, each in the form
+     * group:port/routerId,routerId,... where group is a multicast address.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseSegments(String[] tokens) {
+        if (tokens.length == 0) {
+            segmentsError();
+        }
+
+        for (String token : tokens) {
+            int groupEnd = token.lastIndexOf(':');
+            int portEnd = token.indexOf('/', groupEnd + 1);
+            if (groupEnd <= 0 || portEnd < 0) {
+                segmentsError();
+            }
+
+            InetAddress group = resolveHost(token.substring(0, groupEnd),
+                    "segment group");
+            if (group == null || !group.isMulticastAddress()) {
+                segmentsError();
+            }
+
+            int port = 0;
+            String[] idTokens = token.substring(portEnd + 1).split(",");
+            int[] neighbourIds = new int[idTokens.length];
+            try {
+                port = Integer.parseInt(token.substring(groupEnd + 1,
+                        portEnd));
+                for (int i = 0; i < idTokens.length; i++) {
+                    neighbourIds[i] = Integer.parseInt(idTokens[i]);
+                }
+            } catch (NumberFormatException e) {
+                segmentsError();
+            }
+
+            if (!isValidPortNo(port)) {
+                segmentsError();
+            }
+            for (int id : neighbourIds) {
+                if (!isValidRouterID(id)) {
+                    segmentsError();
+                }
+            }
+
+            this.segments.add(new Segment(new InetSocketAddress(group, port),
+                    neighbourIds));
+        }
+
+        this.segmentsSet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "output-spread" in a line of the
+     * config file and extracts the output spread percentage.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseOutputSpread(String[] tokens) {
+        if (tokens.length != 1) {
+            outputSpreadError();
+        }
+
+        try {
+            int spread = Integer.parseInt(tokens[0]);
+            if (spread >= 0 && spread <= 100) {
+                this.outputSpread = spread;
+            } else {
+                outputSpreadError();
+            }
+
+        } catch (NumberFormatException e) {
+            outputSpreadError();
+        }
+
+        this.outputSpreadSet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "output-rate" in a line of the
+     * config file and extracts the output rate.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseOutputRate(String[] tokens) {
+        if (tokens.length != 1) {
+            outputRateError();
+        }
+
+        try {
+            int rate = Integer.parseInt(tokens[0]);
+            if (rate >= 0) {
+                this.outputRate = rate;
+            } else {
+                outputRateError();
+            }
+
+        } catch (NumberFormatException e) {
+            outputRateError();
+        }
+
+        this.outputRateSet = true;
+    }
+
+    /**
+     * Takes the list of the tokens following "state-file" in a line of the
+     * config file and extracts the path of the state file.
+     * Prints an error message if the contents of the line are not valid.
+     * @param tokens  The tokens from the line in the config file.
+     */
+    private void parseStateFile(String[] tokens) {
+        if (tokens.length != 1 || tokens[0].isEmpty()) {
+            stateFileError();
+        }
+
+        this.stateFile = tokens[0];
+        this.stateFileSet = true;
+    }
+
+    /**
+     * Resolves the host given in an output or segment, or prints an error
+     * message if it cannot be resolved.
+     * @param host          A host name, IPv4 address, or IPv6 address in
+     *                      square brackets.
+     * @param description   What the host is, such as "output host", for the
+     *                      error message.
+     * @return              The resolved address, or null if the host is
+     *                      empty, so that the caller can report its own
+     *                      usage error.
+     */
+    private InetAddress resolveHost(String host, String description) {
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        if (host.isEmpty()) {
+            return null;
+        }
+
+        try {
+            return InetAddress.getByName(host);
+        } catch (UnknownHostException e) {
+            error(String.format("Invalid config file: could not " +
+                    "resolve %s %s.", description, host));
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether an output address refers to this host, so that the
+     * neighbour's port numbers share this router's port space.
+     * @param address   An output address, or null for the local host.
+     * @return          True if the address belongs to this host.
+     */
+    private boolean isLocalAddress(InetAddress address) {
+        if (address == null || address.isLoopbackAddress() ||
+                address.isAnyLocalAddress()) {
+            return true;
+        }
+
+        try {
+            return NetworkInterface.getByInetAddress(address) != null;
+        } catch (SocketException e) {
+            return false;
+        }
+    }
+
+    private boolean isOutputRouterId(int id) {
+        for (int[] output : this.outputs) {
+            if (output[2] == id) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private boolean isValidRouterID(int id) {
         return id >= RIPDaemon.MIN_ROUTER_ID && id <= RIPDaemon.MAX_ROUTER_ID;
     }
@@ -389,7 +954,7 @@ public class ConfigFileParser {
      * and terminates the program.
      */
     private void routerIdError() {
-        Error.error(String.format(
+        error(String.format(
                 "Invalid config file: router-id must be " +
                         "a single integer between %d and %d.",
                 RIPDaemon.MIN_ROUTER_ID,
@@ -401,7 +966,7 @@ public class ConfigFileParser {
      * and terminates the program.
      */
     private void inputPortsError() {
-        Error.error(String.format(
+        error(String.format(
                 "Invalid config file: input-ports must be " +
                         "a non-empty list of integers between %d and %d, " +
                         "separated by spaces.",
@@ -414,9 +979,10 @@ public class ConfigFileParser {
      * and terminates the program.
      */
     private void outputsError() {
-        Error.error("Invalid config file: outputs must be a non-empty " +
+        error("Invalid config file: outputs must be a non-empty " +
                 "space-separated list of entries in the form " +
-                "inputPort-metric-routerId, where each value is an integer.");
+                "[host:]inputPort-metric-routerId, where each value apart " +
+                "from the optional host is an integer.");
     }
 
     /**
@@ -424,7 +990,7 @@ public class ConfigFileParser {
      * and terminates the program.
      */
     private void outputPortError() {
-        Error.error(String.format(
+        error(String.format(
                 "Invalid config file: output-port must be " +
                         "a single integer between %d and %d.",
                 RIPDaemon.MIN_PORT_NO,
@@ -436,7 +1002,108 @@ public class ConfigFileParser {
      * and terminates the program.
      */
     private void updatePeriodError() {
-        Error.error("Invalid config file: update-period must be a " +
+        error("Invalid config file: update-period must be a " +
                 "single positive integer.");
     }
+
+    /**
+     * Prints an error message explaining the usage of the log-level parameter
+     * and terminates the program.
+     */
+    private void logLevelError() {
+        error("Invalid config file: log-level must be one of debug, " +
+                "info, warn or error.");
+    }
+
+    /**
+     * Prints an error message explaining the usage of the table-display
+     * parameter and terminates the program.
+     */
+    private void tableDisplayError() {
+        error("Invalid config file: table-display must be one of " +
+                "full, compact or off.");
+    }
+
+    /**
+     * Prints an error message explaining the usage of the input-threads
+     * parameter and terminates the program.
+     */
+    private void inputThreadsError() {
+        error("Invalid config file: input-threads must be a " +
+                "single positive integer.");
+    }
+
+    /**
+     * Prints an error message explaining the usage of the receive-budget
+     * parameter and terminates the program.
+     */
+    private void receiveBudgetError() {
+        error("Invalid config file: receive-budget must be a " +
+                "single positive integer.");
+    }
+
+    /**
+     * Prints an error message explaining the usage of the segments parameter
+     * and terminates the program.
+     */
+    private void segmentsError() {
+        error(String.format(
+                "Invalid config file: segments must be a non-empty " +
+                        "space-separated list of entries in the form " +
+                        "group:port/routerId,routerId,..., where group is a " +
+                        "multicast address and port is between %d and %d.",
+                RIPDaemon.MIN_PORT_NO,
+                RIPDaemon.MAX_PORT_NO));
+    }
+
+    /**
+     * Prints an error message explaining the usage of the output-spread
+     * parameter and terminates the program.
+     */
+    private void outputSpreadError() {
+        error("Invalid config file: output-spread must be a " +
+                "single integer between 0 and 100.");
+    }
+
+    /**
+     * Prints an error message explaining the usage of the output-rate
+     * parameter and terminates the program.
+     */
+    private void outputRateError() {
+        error("Invalid config file: output-rate must be a " +
+                "single non-negative integer.");
+    }
+
+    /**
+     * Prints an error message explaining the usage of the state-file
+     * parameter and terminates the program.
+     */
+    private void stateFileError() {
+        error("Invalid config file: state-file must be a single file path " +
+                "without spaces.");
+    }
+
+    /**
+     * Reports that the config file is invalid, either by printing the given
+     * message and terminating the program, or by throwing an
+     * InvalidConfigException for tryParseFile() to catch.
+     * @param message   The reason the config file is invalid.
+     */
+    private void error(String message) {
+        if (this.exitOnError) {
+            Error.error(message);
+        }
+        throw new InvalidConfigException(message);
+    }
+
+    /**
+     * Thrown while parsing an invalid config file for tryParseFile().
+     */
+    private static class InvalidConfigException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private InvalidConfigException(String message) {
+            super(message);
+        }
+    }
 }
@@ -0,0 +1,154 @@
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+
+/**
+ * Watches a router's config file, and passes the new config to the daemon
+ * each time the file changes, so that neighbours, input ports and metrics
+ * can be changed without restarting the daemon and losing its routing
+ * table. The file is parsed on the watching thread, and an invalid file is
+ * reported and otherwise ignored. The daemon applies the new config on its
+ * own thread (see RIPDaemon.reloadConfig()).
+ */
+public class ConfigReloader {
+    /**
+     * The messages logged when the config file cannot be watched or
+     * reloaded.
+     */
+    private static final Log.Message NOT_WATCHED = new Log.Message(
+            Log.Level.WARN, "WARNING: could not watch the config file for " +
+            "changes, so it will not be reloaded.", 1);
+    private static final Log.Message NOT_RELOADED = new Log.Message(
+            Log.Level.ERROR, "ERROR: config file not reloaded. %s", 10);
+
+    /**
+     * How long to wait after the file changes before reading it, so that
+     * editors which write a file in several steps have finished.
+     */
+    private static final long SETTLE_MILLIS = 200;
+
+    /**
+     * The config file being watched.
+     */
+    private Path file;
+
+    /**
+     * The daemon to pass new configs to.
+     */
+    private RIPDaemon daemon;
+
+    /**
+     * Watches the directory holding the config file, since editors often
+     * replace the file rather than writing to it. Null if the directory
+     * could not be watched.
+     */
+    private WatchService watcher;
+
+    /**
+     * Starts watching the given config file for changes. If the file cannot
+     * be watched, logs a warning, and the daemon runs without reloading
+     * its config file.
+     * @param filename  The path of the router's config file.
+     * @param daemon    The daemon to pass new configs to.
+     */
+    public ConfigReloader(String filename, RIPDaemon daemon) {
+        this.file = Paths.get(filename).toAbsolutePath();
+        this.daemon = daemon;
+
+        WatchService service = null;
+        try {
+            service = FileSystems.getDefault().newWatchService();
+            this.file.getParent().register(service,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            this.watcher = service;
+        } catch (IOException e) {
+            Log.log(NOT_WATCHED);
+            closeQuietly(service);
+        }
+    }
+
+    /**
+     * Starts the thread which waits for the config file to change, unless
+     * the file could not be watched.
+     */
+    public void start() {
+        if (this.watcher == null) {
+            return;
+        }
+
+        Thread thread = new Thread(this::watch, "config-reloader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Waits for the config file to change, then parses it and passes it to
+     * the daemon, for as long as the program runs.
+     */
+    private void watch() {
+        try {
+            while (true) {
+                WatchKey key = this.watcher.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    Object context = event.context();
+                    changed |= context instanceof Path &&
+                            this.file.getFileName().equals(context);
+                }
+                key.reset();
+
+                if (changed) {
+                    Thread.sleep(SETTLE_MILLIS);
+                    drainEvents();
+                    reload();
+                }
+            }
+        } catch (InterruptedException e) {
+            // The program is exiting.
+        }
+    }
+
+    /**
+     * Discards any further events which arrived while waiting for the file
+     * to settle, since the file is about to be read anyway.
+     */
+    private void drainEvents() {
+        WatchKey key;
+        while ((key = this.watcher.poll()) != null) {
+            key.pollEvents();
+            key.reset();
+        }
+    }
+
+    /**
+     * Closes a watch service which could not be used, if it was created.
+     */
+    private static void closeQuietly(WatchService service) {
+        if (service == null) {
+            return;
+        }
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Nothing more can be done with it.
+        }
+    }
+
+    /**
+     * Parses the config file and passes it to the daemon if it is valid.
+     */
+    private void reload() {
+        ConfigFileParser parser = new ConfigFileParser(this.file.toString());
+        if (!parser.tryParseFile()) {
+            Log.log(NOT_RELOADED, parser.getErrorMessage());
+            return;
+        }
+        this.daemon.reloadConfig(parser);
+    }
+}
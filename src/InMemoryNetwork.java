@@ -0,0 +1,208 @@
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A simulated network connecting routers running in the same JVM. Each
+ * router gets an InMemoryTransport, and a packet sent to a port is copied
+ * into the queue of the transport which owns that port, or of every
+ * transport which has joined the multicast group on that port. As with UDP,
+ * packets sent to a port which nobody owns are silently dropped.
+ */
+public class InMemoryNetwork {
+    /**
+     * The number of possible port numbers.
+     */
+    private static final int NUM_PORTS = 65536;
+
+    /**
+     * The transport which owns each port number, or null if the port is not
+     * in use. Indexed directly by port number, so no lookups allocate.
+     */
+    private final AtomicReferenceArray<InMemoryTransport> ports =
+            new AtomicReferenceArray<>(NUM_PORTS);
+
+    /**
+     * The transports which have joined the multicast group on each port, or
+     * null if there is no group on the port. Each array is replaced rather
+     * than modified, so delivery can read it without locking.
+     */
+    private final AtomicReferenceArray<InMemoryTransport[]> groups =
+            new AtomicReferenceArray<>(NUM_PORTS);
+
+    /**
+     * The owners of ports which have been disconnected, so that they can be
+     * reconnected later.
+     */
+    private final AtomicReferenceArray<InMemoryTransport> disconnected =
+            new AtomicReferenceArray<>(NUM_PORTS);
+
+    /**
+     * The total number of packets and bytes delivered to a transport.
+     */
+    private final AtomicLong packetsDelivered = new AtomicLong();
+    private final AtomicLong bytesDelivered = new AtomicLong();
+
+    /**
+     * Creates a transport for a router, which receives any packets sent to
+     * the given input ports.
+     * @param inputPorts    The router's input port numbers.
+     * @param receiveBudget The maximum number of packets the transport hands
+     *                      over per input port each time it is polled.
+     * @return  The new transport.
+     */
+    public InMemoryTransport createTransport(ArrayList<Integer> inputPorts,
+                                             int receiveBudget) {
+        InMemoryTransport transport = new InMemoryTransport(this, inputPorts,
+                receiveBudget);
+        for (int port : inputPorts) {
+            if (!claimPort(port, transport)) {
+                Error.error(String.format("Error opening input socket " +
+                        "with port number %d", port));
+            }
+        }
+        return transport;
+    }
+
+    /**
+     * Gives a transport ownership of a port, if it is not already in use.
+     * @param port      The port number to claim.
+     * @param transport The transport which will receive packets sent to it.
+     * @return          True if the port was claimed.
+     */
+    boolean claimPort(int port, InMemoryTransport transport) {
+        return groups.get(port) == null &&
+                ports.compareAndSet(port, null, transport);
+    }
+
+    /**
+     * Adds a transport to the multicast group on the given port, so that it
+     * receives a copy of every packet sent to the port.
+     * @param port      The group's port number, which must not be used as an
+     *                  input port.
+     * @param transport The transport joining the group.
+     */
+    synchronized void joinGroup(int port, InMemoryTransport transport) {
+        if (ports.get(port) != null || disconnected.get(port) != null) {
+            Error.error(String.format("Error joining multicast group " +
+                    "with port number %d", port));
+        }
+
+        InMemoryTransport[] members = groups.get(port);
+        if (members == null) {
+            members = new InMemoryTransport[0];
+        }
+        members = Arrays.copyOf(members, members.length + 1);
+        members[members.length - 1] = transport;
+        groups.set(port, members);
+    }
+
+    /**
+     * Removes a transport from the multicast group on the given port.
+     * @param port      The group's port number.
+     * @param transport The transport leaving the group.
+     */
+    synchronized void leaveGroup(int port, InMemoryTransport transport) {
+        InMemoryTransport[] members = groups.get(port);
+        if (members == null) {
+            return;
+        }
+
+        ArrayList<InMemoryTransport> remaining = new ArrayList<>();
+        for (InMemoryTransport member : members) {
+            if (member != transport) {
+                remaining.add(member);
+            }
+        }
+        groups.set(port, remaining.isEmpty() ? null :
+                remaining.toArray(new InMemoryTransport[0]));
+    }
+
+    /**
+     * Disconnects a port, so that packets sent to it are dropped until it is
+     * reconnected. Used to simulate a link failure.
+     * @param port  The port number to disconnect.
+     */
+    public void disconnectPort(int port) {
+        InMemoryTransport owner = ports.getAndSet(port, null);
+        if (owner != null) {
+            disconnected.set(port, owner);
+        }
+    }
+
+    /**
+     * Reconnects a port which was disconnected with disconnectPort().
+     * @param port  The port number to reconnect.
+     */
+    public void reconnectPort(int port) {
+        InMemoryTransport owner = disconnected.getAndSet(port, null);
+        if (owner != null) {
+            ports.compareAndSet(port, null, owner);
+        }
+    }
+
+    /**
+     * Returns the total number of packets delivered so far.
+     * @return  The number of packets delivered.
+     */
+    public long getPacketsDelivered() {
+        return packetsDelivered.get();
+    }
+
+    /**
+     * Returns the total number of bytes delivered so far.
+     * @return  The number of bytes delivered.
+     */
+    public long getBytesDelivered() {
+        return bytesDelivered.get();
+    }
+
+    /**
+     * Copies a packet into the queue of the transport which owns the given
+     * port, if there is one, or of each member of the multicast group on the
+     * port.
+     * @param packet    The packet to deliver, between position and limit.
+     * @param port      The destination port number.
+     */
+    void deliver(ByteBuffer packet, int port) {
+        InMemoryTransport destination = ports.get(port);
+        if (destination != null) {
+            deliverTo(destination, packet);
+            return;
+        }
+
+        InMemoryTransport[] members = groups.get(port);
+        if (members != null) {
+            for (InMemoryTransport member : members) {
+                deliverTo(member, packet.duplicate());
+            }
+        }
+    }
+
+    /**
+     * Copies a packet into the queue of a single transport.
+     */
+    private void deliverTo(InMemoryTransport destination, ByteBuffer packet) {
+        int length = packet.remaining();
+        ByteBuffer copy = ByteBuffer.allocate(length);
+        copy.put(packet);
+        copy.flip();
+        destination.enqueue(copy);
+
+        packetsDelivered.incrementAndGet();
+        bytesDelivered.addAndGet(length);
+    }
+
+    /**
+     * Releases the given ports, so that packets sent to them are dropped.
+     * @param inputPorts    The port numbers to release.
+     * @param transport     The transport which owns the ports.
+     */
+    void release(ArrayList<Integer> inputPorts, InMemoryTransport transport) {
+        for (int port : inputPorts) {
+            ports.compareAndSet(port, transport, null);
+        }
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A transport which exchanges packets with other routers in the same JVM
+ * through an InMemoryNetwork. Received packets wait in a lock-free queue
+ * until the router polls for them. Only the port of a destination address is
+ * used, since all routers share the same network, so a multicast group is
+ * identified by its port alone.
+ */
+public class InMemoryTransport implements Transport {
+    /**
+     * The network this transport is attached to.
+     */
+    private final InMemoryNetwork network;
+
+    /**
+     * The input ports owned by this transport.
+     */
+    private final ArrayList<Integer> inputPorts;
+
+    /**
+     * The ports of the multicast groups this transport has joined.
+     */
+    private final ArrayList<Integer> groupPorts = new ArrayList<>();
+
+    /**
+     * The maximum number of packets to hand over per input port per call to
+     * receive().
+     */
+    private final int receiveBudget;
+
+    /**
+     * The maximum number of packets to hand over per call to receive().
+     */
+    private int receiveLimit;
+
+    /**
+     * Packets which have been delivered to this transport but not received.
+     */
+    private final ConcurrentLinkedQueue<ByteBuffer> queue =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * The thread blocked in receive() waiting for a packet, or null if no
+     * thread is waiting.
+     */
+    private volatile Thread waiter;
+
+    /**
+     * Set by wakeup() to stop the next call to receive() from waiting.
+     */
+    private volatile boolean wakeupPending = false;
+
+    /**
+     * The number of packets and bytes sent through this transport. Only
+     * updated by the router's own thread.
+     */
+    private long packetsSent = 0;
+    private long bytesSent = 0;
+
+    /**
+     * Creates a new transport. Should only be called by InMemoryNetwork.
+     * @param network       The network the transport is attached to.
+     * @param inputPorts    The input ports owned by the transport.
+     * @param receiveBudget The maximum number of packets to hand over per
+     *                      input port per call to receive().
+     */
+    InMemoryTransport(InMemoryNetwork network, ArrayList<Integer> inputPorts,
+                      int receiveBudget) {
+        this.network = network;
+        this.inputPorts = new ArrayList<>(inputPorts);
+        this.receiveBudget = receiveBudget;
+        this.receiveLimit = receiveBudget * Math.max(inputPorts.size(), 1);
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress destination) {
+        packetsSent++;
+        bytesSent += packet.remaining();
+        network.deliver(packet, destination.getPort());
+    }
+
+    @Override
+    public void receive(long timeout, PacketHandler handler) {
+        if (queue.isEmpty() && timeout > 0) {
+            waiter = Thread.currentThread();
+            // Check again in case a packet arrived, or wakeup() was called,
+            // just before the waiter was set.
+            if (queue.isEmpty() && !wakeupPending) {
+                LockSupport.parkNanos(timeout);
+            }
+            waiter = null;
+        }
+        wakeupPending = false;
+
+        for (int i = 0; i < receiveLimit; i++) {
+            ByteBuffer packet = queue.poll();
+            if (packet == null) {
+                break;
+            }
+            handler.handlePacket(packet);
+        }
+    }
+
+    @Override
+    public void openInputPort(int port) throws IOException {
+        if (!network.claimPort(port, this)) {
+            throw new IOException("Port " + port + " is already in use.");
+        }
+        inputPorts.add(port);
+        receiveLimit = receiveBudget * inputPorts.size();
+    }
+
+    @Override
+    public void closeInputPort(int port) {
+        if (inputPorts.remove(Integer.valueOf(port))) {
+            ArrayList<Integer> released = new ArrayList<>();
+            released.add(port);
+            network.release(released, this);
+            receiveLimit = receiveBudget * Math.max(inputPorts.size(), 1);
+        }
+    }
+
+    @Override
+    public void joinGroup(InetSocketAddress group) {
+        network.joinGroup(group.getPort(), this);
+        groupPorts.add(group.getPort());
+    }
+
+    /**
+     * Checks whether any packets are waiting to be received.
+     * @return  True if receive() would hand over at least one packet.
+     */
+    public boolean hasPendingPackets() {
+        return !queue.isEmpty();
+    }
+
+    @Override
+    public void wakeup() {
+        wakeupPending = true;
+
+        Thread waiting = waiter;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+
+    /**
+     * Returns the number of packets sent so far, including any which were
+     * dropped by the network.
+     * @return  The number of packets sent.
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Returns the number of bytes sent so far, including any which were
+     * dropped by the network.
+     * @return  The number of bytes sent.
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    @Override
+    public void close() {
+        network.release(inputPorts, this);
+        for (int port : groupPorts) {
+            network.leaveGroup(port, this);
+        }
+        queue.clear();
+    }
+
+    /**
+     * Adds a delivered packet to the queue, waking up the receiving thread if
+     * it is waiting.
+     * @param packet    The packet, between position and limit.
+     */
+    void enqueue(ByteBuffer packet) {
+        queue.offer(packet);
+
+        Thread waiting = waiter;
+        if (waiting != null) {
+            LockSupport.unpark(waiting);
+        }
+    }
+}
@@ -1,17 +1,47 @@
-import java.io.IOException;
-import java.net.*;
-import java.lang.Integer;
-import java.nio.BufferOverflowException;
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
-import java.nio.channels.*;
-import java.util.*;
+import java.util.ArrayList;
+import java.util.Arrays;
 
 
-public class Input {
+public class Input implements Transport.PacketHandler {
     /**
-     * The selector used to select input sockets which are ready to read.
+     * The diagnostic messages logged while processing packets.
      */
-    private Selector selector;
+    private static final Log.Message INVALID_COMMAND = new Log.Message(
+            Log.Level.WARN, "WARNING: Packet received with incorrect " +
+            "command value of %d.", 10);
+    private static final Log.Message INVALID_VERSION = new Log.Message(
+            Log.Level.WARN, "WARNING: Packet received with incorrect " +
+            "version value of %d.", 10);
+    private static final Log.Message NOT_NEIGHBOUR = new Log.Message(
+            Log.Level.WARN, "WARNING: Packet received with source router ID " +
+            "of %d, which is not a neighbour.", 10);
+    private static final Log.Message INVALID_PACKET = new Log.Message(
+            Log.Level.WARN, "WARNING: Invalid packet received from router " +
+            "%d.", 10);
+    private static final Log.Message SHORT_PACKET = new Log.Message(
+            Log.Level.WARN, "WARNING: Invalid packet received, only %d " +
+            "bytes long.", 10);
+    private static final Log.Message INVALID_DEST_ID = new Log.Message(
+            Log.Level.WARN, "WARNING: received packet with invalid " +
+            "destination ID %d.", 10);
+    private static final Log.Message INVALID_METRIC = new Log.Message(
+            Log.Level.WARN, "WARNING: received packet with invalid metric " +
+            "%d.", 10);
+    private static final Log.Message PACKET_RECEIVED = new Log.Message(
+            Log.Level.DEBUG, "Packet received from %d:", 100);
+    private static final Log.Message ENTRY_RECEIVED = new Log.Message(
+            Log.Level.DEBUG, "  Dest ID: %d  Metric: %d", 1000);
+    private static final Log.Message REQUEST_RECEIVED = new Log.Message(
+            Log.Level.DEBUG, "Request for %d entries received from %d.", 100);
+    private static final Log.Message TABLE_REQUEST_RECEIVED = new Log.Message(
+            Log.Level.DEBUG, "Request for whole table received from %d.", 100);
+
+    /**
+     * The transport which packets are received through.
+     */
+    private Transport transport;
 
     /**
      * Routing table of receiving router.
@@ -19,157 +49,258 @@ public class Input {
     private RoutingTable table;
 
     /**
-     * A byte buffer to store data received from the input sockets.
+     * The daemon which answers requests from neighbours, or null if requests
+     * should be ignored.
+     */
+    private RIPDaemon daemon;
+
+    /**
+     * The router IDs of the neighbours which share a segment with this
+     * router, mapped to 0. Only their updates carry a next hop in the upper
+     * bits of the metric field.
+     */
+    private IntIntMap segmentNeighbours = new IntIntMap();
+
+    /**
+     * The valid entries read from the packet being processed, which are
+     * applied to the routing table together once the packet has been read.
      */
-    private ByteBuffer inBuffer = ByteBuffer.allocate(
-            RIPDaemon.MAX_RESPONSE_PACKET_SIZE);
+    private int[] entryDestIds = new int[RIPDaemon.MAX_ENTRIES_PER_PACKET];
+    private int[] entryMetrics = new int[RIPDaemon.MAX_ENTRIES_PER_PACKET];
 
     /**
      * Creates a new Input object for receiving update messages from neighbours.
-     * @param inputPorts    A list of the port numbers to use for input sockets.
+     * @param transport     The transport to receive packets through.
      * @param table         The routing table of router receiving the updates.
+     * @param daemon        The daemon to pass requests from neighbours to, or
+     *                      null to ignore requests.
      */
-    public Input(ArrayList<Integer> inputPorts, RoutingTable table) {
+    public Input(Transport transport, RoutingTable table, RIPDaemon daemon) {
+        this.transport = transport;
         this.table = table;
+        this.daemon = daemon;
+    }
 
-        try {
-            this.selector = Selector.open();
-        } catch (IOException e) {
-            Error.error("Error: Could not instantiate input port " +
-                    "selector");
-        }
-
-        // Register a datagram channel for each input port with the selector.
-        for (int port : inputPorts) {
-            try {
-                DatagramChannel channel = DatagramChannel.open();
-                channel.configureBlocking(false);
-                channel.socket().bind(new InetSocketAddress(port));
-                channel.register(selector, SelectionKey.OP_READ);
-
-            } catch (IOException e) {
-                e.printStackTrace();
-                Error.error(String.format("Error opening input socket " +
-                        "with port number %d", port));
+    /**
+     * Sets the shared segments joining this router to some of its
+     * neighbours, whose updates give the sender's next hop for each route in
+     * the upper bits of the metric field.
+     * @param segments  The router's segments.
+     */
+    public void setSegments(ArrayList<Segment> segments) {
+        this.segmentNeighbours.clear();
+        for (Segment segment : segments) {
+            for (int id : segment.getNeighbourIds()) {
+                this.segmentNeighbours.put(id, 0);
             }
         }
     }
 
     /**
-     * Waits for response messages to be received using a blocking select call,
-     * then processes any messages received, updating the routing table if
-     * necessary.
-     * @param selectTimeout The timeout in milliseconds for the select call.
+     * Waits for response messages to be received, then processes any messages
+     * received, updating the routing table if necessary.
+     * @param timeout   The longest time to wait in nanoseconds. If this is not
+     *                  positive, only messages which have already arrived are
+     *                  processed.
      */
-    public void waitForMessages(int selectTimeout) {
-        try {
-            selector.select(selectTimeout);
-        } catch (IOException e) {
-            System.err.println("Error selecting readable input sockets.");
-            return;
-        }
-
-        for (SelectionKey key : selector.selectedKeys()) {
-            if (key.isReadable()) {
-                inBuffer.clear();
-                DatagramChannel channel = (DatagramChannel) key.channel();
-                try {
-                    if (channel.receive(inBuffer) != null) {
-                        processPacket();
-                    } else {
-                        System.err.println("ERROR: no datagram available for " +
-                                "reading from input socket.");
-                    }
-                } catch (IOException e) {
-                    System.err.println("ERROR: could not receive packet from " +
-                            "input socket");
-                }
-            }
-        }
+    public void waitForMessages(long timeout) {
+        transport.receive(timeout, this);
+    }
 
-        selector.selectedKeys().clear();
+    @Override
+    public void handlePacket(ByteBuffer packet) {
+        processPacket(packet);
     }
 
     /**
-     * Processes the received response packet currently stored in the inBuffer,
-     * checking it for validity, then updating the routing table if needed.
+     * Processes a received request or response packet, checking it for
+     * validity. Requests are passed on to the daemon to be answered, and
+     * responses update the routing table if needed. Large updates are split
+     * across several packets by the sender, so each packet is treated as an
+     * independent partial update.
+     *
+     * The packet is read and validated without touching the routing table,
+     * and its entries are then applied while holding the table's lock, so
+     * several Inputs can process packets concurrently on different threads.
+     * @param packet    A buffer holding the packet between its position and
+     *                  limit.
      */
-    private void processPacket() {
-        inBuffer.flip();
+    void processPacket(ByteBuffer packet) {
+        // A packet too short to hold a header would otherwise throw, which
+        // would kill the thread receiving packets.
+        if (packet.remaining() < RIPDaemon.HEADER_BYTES) {
+            Log.log(SHORT_PACKET, packet.remaining());
+            return;
+        }
 
         // Read the values in the header fields, and check that they are valid.
-        int command = inBuffer.get();
-        int version = inBuffer.get();
-        short senderId = inBuffer.getShort();
+        int command = packet.get();
+        int version = packet.get();
+        // The sender ID field is 16 bits wide and unsigned, so that router IDs
+        // above 32767 are not read as negative numbers.
+        int senderId = packet.getShort() & 0xFFFF;
 
-        if (command != RIPDaemon.RESPONSE_COMMAND) {
-            System.err.println(String.format("ERROR: Packet received with " +
-                    "incorrect command value of %d.", command));
+        if (command != RIPDaemon.RESPONSE_COMMAND &&
+                command != RIPDaemon.REQUEST_COMMAND) {
+            Log.log(INVALID_COMMAND, command);
             return;
         }
 
         if (version != RIPDaemon.RIP_VERSION) {
-            System.err.println(String.format("ERROR: Packet received with " +
-                    "incorrect version value of %d.", version));
+            Log.log(INVALID_VERSION, version);
+            return;
+        }
+
+        // Routers on a segment receive their own multicast updates back.
+        if (senderId == table.getRouterId()) {
             return;
         }
 
         if (!table.isNeighbour(senderId)) {
-            System.err.println(String.format("ERROR: Packet received with " +
-                    "source router ID of %d, which is not a neighbour.",
-                    senderId));
+            Log.log(NOT_NEIGHBOUR, senderId);
             return;
         }
 
-        System.err.println();
-        System.err.println(String.format("Packet received from %d:",
-                senderId));
+        if (command == RIPDaemon.REQUEST_COMMAND) {
+            processRequest(senderId, packet);
+            return;
+        }
+
+        Log.log(PACKET_RECEIVED, senderId);
 
-        // If a packet if received from a neighbour, the link to the neighbour
-        // must be up, so the route to the neighbour is updated.
-        processEntry(senderId, senderId, 0);
+        // Only neighbours on a segment put a next hop in the metric field,
+        // so for any other sender non-zero upper bits are an invalid metric.
+        boolean fromSegment = segmentNeighbours.containsKey(senderId);
 
-        while (inBuffer.hasRemaining()) {
+        int numEntries = 0;
+        while (packet.hasRemaining()) {
             int destId, metric;
+            int nextHop = 0;
             try {
-                destId = inBuffer.getInt();
-                metric = inBuffer.getInt();
-            } catch (BufferOverflowException e) {
-                System.err.println(String.format("ERROR: Invalid packet " +
-                        "received from router %d.", senderId));
-                return;
+                destId = packet.getInt();
+                metric = packet.getInt();
+                if (fromSegment) {
+                    nextHop = metric >>> RIPDaemon.NEXT_HOP_SHIFT;
+                    metric &= RIPDaemon.METRIC_MASK;
+                }
+            } catch (BufferUnderflowException e) {
+                Log.log(INVALID_PACKET, senderId);
+                break;
             }
 
             if (destId < RIPDaemon.MIN_ROUTER_ID ||
                     destId > RIPDaemon.MAX_ROUTER_ID) {
-                System.err.println(String.format("ERROR: received packet " +
-                        "with invalid destination ID %d.", destId));
+                Log.log(INVALID_DEST_ID, destId);
                 continue;
             }
 
             if (metric < 1 || metric > RIPDaemon.INFINITY) {
-                System.err.println(String.format("ERROR: received packet " +
-                        "with invalid metric %d.", metric));
+                Log.log(INVALID_METRIC, metric);
+                continue;
+            }
+
+            Log.log(ENTRY_RECEIVED, destId, metric);
+
+            // A neighbour's route back to this router is of no use, and
+            // adding it to the table would advertise it to other routers.
+            if (destId == table.getRouterId()) {
                 continue;
             }
 
-            System.err.println(String.format("  Dest ID: %d  Metric: %d",
-                    destId, metric));
-            processEntry(senderId, destId, metric);
+            // Updates sent to a segment give the sender's next hop rather
+            // than using poison reverse, so split horizon is applied here.
+            if (nextHop == table.getRouterId()) {
+                metric = RIPDaemon.INFINITY;
+            }
+
+            if (numEntries == entryDestIds.length) {
+                entryDestIds = Arrays.copyOf(entryDestIds, numEntries * 2);
+                entryMetrics = Arrays.copyOf(entryMetrics, numEntries * 2);
+            }
+            entryDestIds[numEntries] = destId;
+            entryMetrics[numEntries] = metric;
+            numEntries++;
         }
 
-        System.err.println();
+        synchronized (table) {
+            // A reloaded config may have removed the neighbour since it was
+            // checked above, on another thread.
+            if (!table.isNeighbour(senderId)) {
+                Log.log(NOT_NEIGHBOUR, senderId);
+                return;
+            }
+
+            // If a packet if received from a neighbour, the link to the
+            // neighbour must be up, so the route to the neighbour is updated.
+            processEntry(senderId, senderId, 0);
+
+            for (int i = 0; i < numEntries; i++) {
+                processEntry(senderId, entryDestIds[i], entryMetrics[i]);
+            }
+        }
+    }
+
+    /**
+     * Processes a request packet from a neighbour (RFC 2453 section 3.9.1).
+     * A request holding a single entry with the whole-table request ID and a
+     * metric of infinity asks for the whole routing table. Any other request
+     * asks for specific entries, which are looked up straight away, with a
+     * metric of infinity for destinations with no route. The answer is sent
+     * by the daemon's thread. Requests with no entries are ignored.
+     * @param senderId  ID of the neighbour which sent the request.
+     * @param packet    The request packet, positioned after the header.
+     */
+    private void processRequest(int senderId, ByteBuffer packet) {
+        int numEntries = packet.remaining() / RIPDaemon.RIP_ENTRY_BYTES;
+        if (daemon == null || numEntries == 0) {
+            return;
+        }
+
+        int position = packet.position();
+        if (numEntries == 1 && packet.getInt(position) ==
+                RIPDaemon.WHOLE_TABLE_REQUEST_ID && packet.getInt(position +
+                4) == RIPDaemon.INFINITY) {
+            Log.log(TABLE_REQUEST_RECEIVED, senderId);
+            daemon.requestReceived(new int[] {senderId});
+            return;
+        }
+
+        Log.log(REQUEST_RECEIVED, numEntries, senderId);
+        int[] response = new int[1 + 2 * numEntries];
+        response[0] = senderId;
+        synchronized (table) {
+            for (int i = 0; i < numEntries; i++) {
+                int destId = packet.getInt();
+                packet.getInt();
+
+                int metric = RIPDaemon.INFINITY;
+                if (table.hasRoute(destId)) {
+                    metric = table.getMetric(destId);
+                }
+                response[1 + 2 * i] = destId;
+                response[2 + 2 * i] = metric;
+            }
+        }
+        daemon.requestReceived(response);
     }
 
     /**
      * Processes a single RIP entry from a received response packet, updating
-     * the routing table as necessary.
+     * the routing table as necessary. Entries from a router which is not a
+     * neighbour are ignored. Must be called while holding the table's lock
+     * if other threads may be using the table.
      * @param senderId     ID of router which send the packet.
      * @param destId       Destination router ID of the RIP entry.
      * @param metricSent   Metric of the RIP entry.
      */
-    private void processEntry(int senderId, int destId, int metricSent) {
-        int metric = metricSent + table.getMetricToNeighbour(senderId);
+    void processEntry(int senderId, int destId, int metricSent) {
+        int linkMetric = table.getMetricToNeighbour(senderId);
+        if (linkMetric == IntIntMap.NO_VALUE) {
+            // The sender is no longer a neighbour.
+            return;
+        }
+
+        int metric = metricSent + linkMetric;
         if (metric > RIPDaemon.INFINITY) {
             metric = RIPDaemon.INFINITY;
         }
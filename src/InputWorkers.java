@@ -0,0 +1,142 @@
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+
+/**
+ * A pool of threads which receive and process packets in parallel, used
+ * instead of the daemon's own thread on routers with many input ports. The
+ * input ports are divided between the threads, each of which receives
+ * through its own transport and processes packets with its own Input.
+ *
+ * Input only holds the routing table's lock while applying a packet's
+ * entries, so receiving, parsing and validating packets all run in
+ * parallel. Whenever a thread changes the table it wakes up the daemon, so
+ * that triggered updates are sent and the table is displayed straight away.
+ */
+public class InputWorkers {
+    /**
+     * The longest time a thread waits for packets before checking whether it
+     * has been stopped.
+     */
+    private static final long POLL_TIMEOUT = Clock.NANOS_PER_SECOND;
+
+    /**
+     * The transport of each thread, owning its share of the input ports.
+     */
+    private ArrayList<Transport> transports = new ArrayList<>();
+
+    /**
+     * The worker threads, once started.
+     */
+    private ArrayList<Thread> threads = new ArrayList<>();
+
+    /**
+     * Cleared to make the threads finish.
+     */
+    private volatile boolean running = true;
+
+    /**
+     * The index of the transport to join the next multicast group on.
+     */
+    private int nextGroupTransport = 0;
+
+    /**
+     * Opens the input ports, dividing them between the given number of
+     * threads (or one thread per port, if there are fewer ports).
+     * @param inputPorts    The router's input port numbers.
+     * @param numThreads    The number of threads to use.
+     * @param receiveBudget The maximum number of packets each thread receives
+     *                      from a port before moving on to its other ports.
+     */
+    public InputWorkers(ArrayList<Integer> inputPorts, int numThreads,
+                        int receiveBudget) {
+        numThreads = Math.min(numThreads, inputPorts.size());
+
+        ArrayList<ArrayList<Integer>> groups = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            groups.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < inputPorts.size(); i++) {
+            groups.get(i % numThreads).add(inputPorts.get(i));
+        }
+
+        for (ArrayList<Integer> group : groups) {
+            transports.add(new UdpTransport(group, receiveBudget));
+        }
+    }
+
+    /**
+     * Makes one of the threads listen to a multicast group as well as its
+     * input ports. Groups are shared out between the threads in turn.
+     * Must be called before start().
+     * @param group The multicast group address and port to listen to.
+     */
+    public void joinGroup(InetSocketAddress group) {
+        transports.get(nextGroupTransport).joinGroup(group);
+        nextGroupTransport = (nextGroupTransport + 1) % transports.size();
+    }
+
+    /**
+     * Starts the threads, which process packets into the daemon's routing
+     * table.
+     * @param daemon    The daemon whose table is updated.
+     */
+    public void start(RIPDaemon daemon) {
+        for (int i = 0; i < transports.size(); i++) {
+            Transport transport = transports.get(i);
+            Thread thread = new Thread(() -> work(transport, daemon),
+                    "input-" + i);
+            thread.setDaemon(true);
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops the threads and waits for them to close their transports.
+     */
+    public void stop() {
+        running = false;
+        for (Transport transport : transports) {
+            transport.wakeup();
+        }
+
+        for (Thread thread : threads) {
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        threads.clear();
+    }
+
+    /**
+     * Receives and processes packets until stopped, waking up the daemon
+     * whenever they change the routing table.
+     */
+    private void work(Transport transport, RIPDaemon daemon) {
+        RoutingTable table = daemon.getTable();
+        Input input = new Input(transport, table, daemon);
+        input.setSegments(daemon.getSegments());
+
+        long version;
+        synchronized (table) {
+            version = table.getVersion();
+        }
+
+        while (running) {
+            input.waitForMessages(POLL_TIMEOUT);
+
+            long newVersion;
+            synchronized (table) {
+                newVersion = table.getVersion();
+            }
+            if (newVersion != version) {
+                version = newVersion;
+                daemon.wakeup();
+            }
+        }
+        transport.close();
+    }
+}
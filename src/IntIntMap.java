@@ -0,0 +1,198 @@
+import java.util.Arrays;
+
+/**
+ * An open-addressing hash map from int keys to int values, using linear
+ * probing. Keys and values are stored inline in primitive arrays, so lookups
+ * and updates never box or allocate (apart from occasionally growing the
+ * arrays when the map fills up).
+ *
+ * Keys must be positive, since 0 is used to mark empty slots. This is always
+ * the case for router IDs. Values must be non-negative, since NO_VALUE is
+ * returned for missing keys.
+ */
+public class IntIntMap {
+    /**
+     * The value returned by get() for keys which are not in the map.
+     */
+    public static final int NO_VALUE = -1;
+
+    /**
+     * The key used to mark an empty slot in the keys array.
+     */
+    private static final int EMPTY = 0;
+
+    /**
+     * The initial capacity of the map, must be a power of two.
+     */
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The keys and values of the map. Both arrays have a length which is a
+     * power of two, and the value for keys[i] is stored in values[i].
+     */
+    private int[] keys;
+    private int[] values;
+
+    /**
+     * Mask used to wrap indices into the keys and values arrays.
+     */
+    private int mask;
+
+    /**
+     * The number of keys currently in the map.
+     */
+    private int size = 0;
+
+    /**
+     * Creates a new, empty map with the default capacity.
+     */
+    public IntIntMap() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Creates a new, empty map able to hold the given number of keys without
+     * needing to grow.
+     * @param expectedSize  The number of keys expected to be stored.
+     */
+    public IntIntMap(int expectedSize) {
+        int capacity = DEFAULT_CAPACITY;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new int[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Returns the value for the given key, or NO_VALUE if it is not present.
+     * @param key   The key to look up.
+     * @return      The value for the key, or NO_VALUE.
+     */
+    public int get(int key) {
+        int i = indexOf(key);
+        return i < 0 ? NO_VALUE : values[i];
+    }
+
+    /**
+     * Checks whether the given key is in the map.
+     * @param key   The key to check for.
+     * @return      True if the key is in the map.
+     */
+    public boolean containsKey(int key) {
+        return indexOf(key) >= 0;
+    }
+
+    /**
+     * Sets the value for the given key, adding the key if it is not present.
+     * @param key   The key, must be positive.
+     * @param value The value to store for the key.
+     */
+    public void put(int key, int value) {
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+
+        keys[i] = key;
+        values[i] = value;
+        size++;
+
+        if (size * 2 > keys.length) {
+            grow();
+        }
+    }
+
+    /**
+     * Removes the given key from the map, if it is present. Uses backward
+     * shift deletion, so no tombstones are left behind.
+     * @param key   The key to remove.
+     */
+    public void remove(int key) {
+        int i = indexOf(key);
+        if (i < 0) {
+            return;
+        }
+
+        // Shift any following entries in the probe sequence back into the
+        // gap, so that later lookups still find them.
+        int gap = i;
+        int j = (gap + 1) & mask;
+        while (keys[j] != EMPTY) {
+            int home = hash(keys[j]) & mask;
+            if (((j - home) & mask) >= ((j - gap) & mask)) {
+                keys[gap] = keys[j];
+                values[gap] = values[j];
+                gap = j;
+            }
+            j = (j + 1) & mask;
+        }
+
+        keys[gap] = EMPTY;
+        size--;
+    }
+
+    /**
+     * Removes all keys from the map.
+     */
+    public void clear() {
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    /**
+     * Returns the number of keys in the map.
+     * @return  Number of keys in the map.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the index of the given key in the keys array, or -1 if the key
+     * is not in the map.
+     */
+    private int indexOf(int key) {
+        int i = hash(key) & mask;
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                return i;
+            }
+            i = (i + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Doubles the capacity of the map, re-inserting all existing keys.
+     */
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldValues = values;
+
+        keys = new int[oldKeys.length * 2];
+        values = new int[oldValues.length * 2];
+        mask = keys.length - 1;
+        size = 0;
+
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    /**
+     * Scrambles the bits of a key so that sequential router IDs are spread
+     * across the table.
+     */
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,336 @@
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Asynchronous, rate-limited logging of diagnostic messages to stderr.
+ *
+ * Callers never block on console output: each log call only checks the
+ * message's level and rate limit, then copies the message type and its
+ * arguments into a slot of a lock-free ring buffer. A background thread
+ * formats and prints the queued messages. If the ring buffer is full the
+ * message is dropped, and the number of dropped messages is reported once
+ * there is room again.
+ *
+ * Fatal errors should still be reported with Error.error(), which prints
+ * synchronously before terminating the program.
+ */
+public class Log {
+    /**
+     * The severity levels of log messages, in increasing order of severity.
+     */
+    public enum Level {
+        DEBUG, INFO, WARN, ERROR
+    }
+
+    /**
+     * The number of slots in the ring buffer, must be a power of two.
+     */
+    private static final int RING_SIZE = 4096;
+
+    /**
+     * The longest time the printing thread sleeps for when it has nothing to
+     * print, as a safeguard against a missed wakeup.
+     */
+    private static final long MAX_IDLE_NANOS = 100000000L;
+
+    /**
+     * Messages below this level are discarded.
+     */
+    private static volatile Level level = Level.INFO;
+
+    /**
+     * The message type, argument count and arguments stored in each slot of
+     * the ring buffer.
+     */
+    private static final Message[] messages = new Message[RING_SIZE];
+    private static final int[] argCounts = new int[RING_SIZE];
+    private static final int[] firstArgs = new int[RING_SIZE];
+    private static final int[] secondArgs = new int[RING_SIZE];
+    private static final String[] textArgs = new String[RING_SIZE];
+
+    /**
+     * The sequence number of each slot. A slot can be written by the producer
+     * claiming position p when its sequence is p, and can be read by the
+     * consumer at position p when its sequence is p + 1.
+     */
+    private static final AtomicLongArray sequences =
+            new AtomicLongArray(RING_SIZE);
+
+    /**
+     * The next position to be claimed by a producer.
+     */
+    private static final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The next position to be read by the printing thread. Only accessed by
+     * the printing thread.
+     */
+    private static long head = 0;
+
+    /**
+     * The number of messages dropped because the ring buffer was full.
+     */
+    private static final AtomicInteger dropped = new AtomicInteger();
+
+    /**
+     * Set by the printing thread just before it parks, so that producers know
+     * to wake it up.
+     */
+    private static volatile boolean printerWaiting = false;
+
+    /**
+     * The background thread which prints queued messages.
+     */
+    private static final Thread printer;
+
+    static {
+        for (int i = 0; i < RING_SIZE; i++) {
+            sequences.set(i, i);
+        }
+
+        printer = new Thread(Log::printLoop, "log-printer");
+        printer.setDaemon(true);
+        printer.start();
+    }
+
+    /**
+     * Sets the minimum level of messages which are logged.
+     * @param newLevel  The new minimum level.
+     */
+    public static void setLevel(Level newLevel) {
+        level = newLevel;
+    }
+
+    /**
+     * Checks whether messages of the given level are currently logged. Can be
+     * used to skip work which is only needed to produce a log message.
+     * @param messageLevel  The level to check.
+     * @return              True if messages of the level are logged.
+     */
+    public static boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+
+    /**
+     * Logs a message which takes no arguments.
+     * @param message   The type of message to log.
+     */
+    public static void log(Message message) {
+        enqueue(message, 0, 0, 0, null);
+    }
+
+    /**
+     * Logs a message which takes one integer argument.
+     * @param message   The type of message to log.
+     * @param arg       The argument to format the message with.
+     */
+    public static void log(Message message, int arg) {
+        enqueue(message, 1, arg, 0, null);
+    }
+
+    /**
+     * Logs a message which takes two integer arguments.
+     * @param message   The type of message to log.
+     * @param firstArg  The first argument to format the message with.
+     * @param secondArg The second argument to format the message with.
+     */
+    public static void log(Message message, int firstArg, int secondArg) {
+        enqueue(message, 2, firstArg, secondArg, null);
+    }
+
+    /**
+     * Logs a message which takes one string argument. Meant for messages
+     * which are logged rarely, such as those about the config file, so that
+     * messages logged per packet still allocate nothing.
+     * @param message   The type of message to log.
+     * @param text      The argument to format the message with.
+     */
+    public static void log(Message message, String text) {
+        enqueue(message, 1, 0, 0, String.valueOf(text));
+    }
+
+    /**
+     * Adds a message to the ring buffer, if its level is enabled, it is within
+     * its rate limit and there is room in the buffer.
+     */
+    private static void enqueue(Message message, int argCount, int firstArg,
+                                int secondArg, String text) {
+        if (!isEnabled(message.level) || !message.tryAcquire()) {
+            return;
+        }
+
+        // Claim the next free slot, giving up if the buffer is full.
+        long position;
+        int index;
+        while (true) {
+            position = tail.get();
+            index = (int) position & (RING_SIZE - 1);
+            long available = sequences.get(index) - position;
+            if (available < 0) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (available == 0 && tail.compareAndSet(position, position + 1)) {
+                break;
+            }
+        }
+
+        messages[index] = message;
+        argCounts[index] = argCount;
+        firstArgs[index] = firstArg;
+        secondArgs[index] = secondArg;
+        textArgs[index] = text;
+        sequences.set(index, position + 1);
+
+        if (printerWaiting) {
+            printerWaiting = false;
+            LockSupport.unpark(printer);
+        }
+    }
+
+    /**
+     * Repeatedly prints queued messages, parking whenever the ring buffer is
+     * empty.
+     */
+    private static void printLoop() {
+        while (true) {
+            if (!printNext()) {
+                printerWaiting = true;
+                // Check again in case a message was queued just before the
+                // flag was set.
+                if (!printNext()) {
+                    LockSupport.parkNanos(MAX_IDLE_NANOS);
+                }
+                printerWaiting = false;
+            }
+        }
+    }
+
+    /**
+     * Prints the message at the head of the ring buffer, if there is one.
+     * @return  True if a message was printed.
+     */
+    private static boolean printNext() {
+        int index = (int) head & (RING_SIZE - 1);
+        if (sequences.get(index) != head + 1) {
+            return false;
+        }
+
+        Message message = messages[index];
+        int argCount = argCounts[index];
+        int firstArg = firstArgs[index];
+        int secondArg = secondArgs[index];
+        String text = textArgs[index];
+        messages[index] = null;
+        textArgs[index] = null;
+        sequences.set(index, head + RING_SIZE);
+        head++;
+
+        int numDropped = dropped.getAndSet(0);
+        if (numDropped > 0) {
+            System.err.println(String.format("(%d log messages dropped)",
+                    numDropped));
+        }
+
+        int suppressed = message.takeSuppressed();
+        if (suppressed > 0) {
+            System.err.println(String.format("(%d similar messages " +
+                    "suppressed)", suppressed));
+        }
+
+        if (argCount == 0) {
+            System.err.println(message.format);
+        } else if (text != null) {
+            System.err.println(String.format(message.format, text));
+        } else if (argCount == 1) {
+            System.err.println(String.format(message.format, firstArg));
+        } else {
+            System.err.println(String.format(message.format, firstArg,
+                    secondArg));
+        }
+        return true;
+    }
+
+    /**
+     * A type of log message, with its level, format string and rate limit.
+     * Each call site which logs a message should use its own static instance,
+     * so that a flood of one kind of message cannot crowd out the others.
+     */
+    public static class Message {
+        /**
+         * Length of the window over which the rate limit is applied.
+         */
+        private static final long RATE_WINDOW_NANOS = 1000000000L;
+
+        private final Level level;
+
+        /**
+         * The format string for the message, taking up to two integer
+         * arguments or a single string argument.
+         */
+        private final String format;
+
+        /**
+         * The maximum number of messages of this type logged per second.
+         */
+        private final int maxPerSecond;
+
+        /**
+         * The start of the current rate limit window.
+         */
+        private final AtomicLong windowStart = new AtomicLong(System.nanoTime());
+
+        /**
+         * The number of messages logged in the current window.
+         */
+        private final AtomicInteger count = new AtomicInteger();
+
+        /**
+         * The number of messages discarded for exceeding the rate limit
+         * since the last one was printed.
+         */
+        private final AtomicInteger suppressed = new AtomicInteger();
+
+        /**
+         * Creates a new message type.
+         * @param level         The level of the message.
+         * @param format        The format string, taking up to two integer
+         *                      arguments or a single string argument.
+         * @param maxPerSecond  The maximum number of messages of this type
+         *                      logged per second.
+         */
+        public Message(Level level, String format, int maxPerSecond) {
+            this.level = level;
+            this.format = format;
+            this.maxPerSecond = maxPerSecond;
+        }
+
+        /**
+         * Checks whether another message of this type can be logged without
+         * exceeding the rate limit, counting it if so.
+         */
+        private boolean tryAcquire() {
+            long now = System.nanoTime();
+            long start = windowStart.get();
+            if (now - start >= RATE_WINDOW_NANOS &&
+                    windowStart.compareAndSet(start, now)) {
+                count.set(0);
+            }
+
+            if (count.incrementAndGet() <= maxPerSecond) {
+                return true;
+            }
+            suppressed.incrementAndGet();
+            return false;
+        }
+
+        /**
+         * Returns the number of suppressed messages, resetting it to zero.
+         */
+        private int takeSuppressed() {
+            return suppressed.getAndSet(0);
+        }
+    }
+}
@@ -2,57 +2,126 @@ import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.PriorityQueue;
+import java.util.Random;
 
 public class Output {
+    /**
+     * Logged when a response packet cannot be sent to a neighbour.
+     */
+    private static final Log.Message SEND_FAILED = new Log.Message(
+            Log.Level.ERROR, "ERROR: could not send response message to " +
+            "router %d.", 10);
+    private static final Log.Message SEGMENT_SEND_FAILED = new Log.Message(
+            Log.Level.ERROR, "ERROR: could not send response message to " +
+            "the segment on port %d.", 10);
+
+    /**
+     * The largest burst the send rate limit allows after a quiet spell, in
+     * milliseconds' worth of bytes at the limited rate.
+     */
+    private static final int RATE_BURST_MILLIS = 100;
+
     /**
      * The router ID of the router sending the updates.
      */
     private int routerId;
 
     /**
-     * The IP address to send response messages to, initialised to the
-     * localhost address in the constructor.
+     * The IP address to send response messages to neighbours with no address
+     * of their own, initialised to the localhost address in the constructor.
      */
     private InetAddress destAddress;
 
     /**
-     * The socket used for sending response packets.
+     * The transport used for sending response packets.
+     */
+    private Transport transport;
+
+    /**
+     * The neighbours to which response messages are sent.
+     */
+    private ArrayList<Neighbour> neighbours = new ArrayList<>();
+
+    /**
+     * Where updates are sent: one entry for each segment, reaching all the
+     * neighbours on it, and the neighbours which are not on any segment.
+     * Answers to requests are still sent to the neighbour which asked.
      */
-    private DatagramSocket outputSocket;
+    private ArrayList<Neighbour> destinations = new ArrayList<>();
 
     /**
-     * The routing table of the router sending the updates.
+     * Reusable buffers to encode triggered updates into.
      */
-    private RoutingTable table;
+    private PacketBuffers triggeredPackets = new PacketBuffers();
 
     /**
-     * The neighbours to which response messages are sent. Maps the router ID
-     * of each neighbour to the port number which messages to this neighbour
-     * should be sent to.
+     * Reusable buffers to encode requests, and responses to requests for
+     * specific entries, into.
      */
-    private HashMap<Integer, Integer> neighbours = new HashMap<>();
+    private PacketBuffers requestPackets = new PacketBuffers();
+
+    /**
+     * The clock used to pace periodic updates, or null if they are sent to
+     * every neighbour at once.
+     */
+    private Clock clock = null;
+
+    /**
+     * Source of the random offsets applied to each neighbour's send time.
+     */
+    private Random random;
+
+    /**
+     * The window after each periodic update timer expiry over which the
+     * updates to the neighbours are spread, in nanoseconds.
+     */
+    private long spreadNanos = 0;
+
+    /**
+     * Limits the rate at which bytes are sent, or null if unlimited.
+     */
+    private TokenBucket sendRate = null;
+
+    /**
+     * The neighbours waiting to be sent a paced periodic update, earliest
+     * send time first.
+     */
+    private PriorityQueue<Neighbour> scheduledUpdates = new PriorityQueue<>(
+            (a, b) -> Long.compare(a.sendTime - b.sendTime, 0));
 
     /**
      * Creates a new Output object for sending response messages to neighbours.
      * @param routerId      The ID of the router sending the updates.
-     * @param outputPortNo  The port number to use for the output socket.
+     * @param transport     The transport to send response packets through.
      * @param outputs       A list of the router's neighbours, in the form
      *                          [inputPort, metric, routerId].
-     * @param table         The routing table of router sending the updates.
      */
-    public Output(int routerId, int outputPortNo, ArrayList<int[]> outputs,
-                  RoutingTable table) {
-        this.routerId = routerId;
-        this.table = table;
+    public Output(int routerId, Transport transport, ArrayList<int[]> outputs) {
+        this(routerId, transport, outputs, null, new ArrayList<Segment>());
+    }
 
-        try {
-            this.outputSocket = new DatagramSocket(outputPortNo);
-        } catch (SocketException e) {
-            e.printStackTrace();
-            Error.error(String.format("ERROR: could not open output " +
-                    "socket with port number %d.", outputPortNo));
-        }
+    /**
+     * Creates a new Output object for sending response messages to neighbours,
+     * which may be on other hosts.
+     * @param routerId      The ID of the router sending the updates.
+     * @param transport     The transport to send response packets through.
+     * @param outputs       A list of the router's neighbours, in the form
+     *                          [inputPort, metric, routerId].
+     * @param addresses     The address of each neighbour, in the same order
+     *                          as outputs, or null for the local host. The
+     *                          list itself may be null if every neighbour is
+     *                          on the local host.
+     * @param segments      The shared segments joining the router to some of
+     *                          its neighbours. A single multicast update is
+     *                          sent to each segment, instead of an update to
+     *                          each neighbour on it.
+     */
+    public Output(int routerId, Transport transport, ArrayList<int[]> outputs,
+                  ArrayList<InetAddress> addresses,
+                  ArrayList<Segment> segments) {
+        this.routerId = routerId;
+        this.transport = transport;
 
         try {
             this.destAddress = InetAddress.getLocalHost();
@@ -60,83 +129,540 @@ public class Output {
             Error.error("ERROR: could not resolve localhost address.");
         }
 
-        // Initialise the neighbours map with the given outputs information.
-        for (int[] neighbour : outputs) {
+        addNeighbours(outputs, addresses, segments, new ArrayList<>());
+    }
+
+    /**
+     * Replaces the neighbours and segments with those from a reloaded config
+     * file. Neighbours and segments which have not changed keep their cached
+     * updates and their place in the paced update queue.
+     * @param outputs       The new list of neighbours, in the form
+     *                          [inputPort, metric, routerId].
+     * @param addresses     The address of each neighbour, or null for the
+     *                          local host.
+     * @param segments      The new shared segments.
+     * @return              The router IDs of the neighbours which are new,
+     *                          or whose address has changed.
+     */
+    public ArrayList<Integer> setNeighbours(ArrayList<int[]> outputs,
+                                           ArrayList<InetAddress> addresses,
+                                           ArrayList<Segment> segments) {
+        ArrayList<Neighbour> previous = new ArrayList<>(this.neighbours);
+        previous.addAll(this.destinations);
+        this.neighbours = new ArrayList<>();
+        this.destinations = new ArrayList<>();
+        addNeighbours(outputs, addresses, segments, previous);
+
+        ArrayList<Integer> added = new ArrayList<>();
+        for (Neighbour neighbour : this.neighbours) {
+            if (!previous.contains(neighbour)) {
+                added.add(neighbour.id);
+            }
+            if (!this.destinations.contains(neighbour)) {
+                neighbour.updateScheduled = false;
+            }
+        }
+
+        this.scheduledUpdates.clear();
+        for (Neighbour destination : this.destinations) {
+            if (destination.updateScheduled) {
+                this.scheduledUpdates.add(destination);
+            }
+        }
+        return added;
+    }
+
+    /**
+     * Fills in the neighbours and destinations lists, reusing any of the
+     * given previous entries which match.
+     */
+    private void addNeighbours(ArrayList<int[]> outputs,
+                               ArrayList<InetAddress> addresses,
+                               ArrayList<Segment> segments,
+                               ArrayList<Neighbour> previous) {
+        // Initialise the neighbours list with the given outputs information.
+        // Each socket address is built once, so sending never needs to
+        // resolve anything.
+        for (int i = 0; i < outputs.size(); i++) {
+            int[] neighbour = outputs.get(i);
             int id = neighbour[2];
             int portNo = neighbour[0];
-            this.neighbours.put(id, portNo);
+            InetAddress address = addresses == null ? null : addresses.get(i);
+            if (address == null) {
+                address = this.destAddress;
+            }
+            Neighbour entry = findOrCreate(previous, id,
+                    new InetSocketAddress(address, portNo), false);
+            this.neighbours.add(entry);
+
+            boolean onSegment = false;
+            for (Segment segment : segments) {
+                onSegment |= segment.contains(id);
+            }
+            if (!onSegment) {
+                this.destinations.add(entry);
+            }
+        }
+
+        for (Segment segment : segments) {
+            this.destinations.add(findOrCreate(previous, 0,
+                    segment.getGroup(), true));
+        }
+    }
+
+    /**
+     * Returns the entry from the given list with the given ID and address,
+     * or a new entry if there is none.
+     */
+    private Neighbour findOrCreate(ArrayList<Neighbour> previous, int id,
+                                   InetSocketAddress address,
+                                   boolean isSegment) {
+        for (Neighbour neighbour : previous) {
+            if (neighbour.id == id && neighbour.isSegment == isSegment &&
+                    neighbour.address.equals(address)) {
+                return neighbour;
+            }
+        }
+        return new Neighbour(id, address, isSegment);
+    }
+
+    /**
+     * Spreads periodic updates out rather than sending them to every
+     * neighbour at once. Each neighbour's update is sent at its own random
+     * time within the spread window, so that the neighbours' input queues
+     * and the socket buffer are not all hit at the same moment, and the total
+     * rate of sending can also be limited.
+     * @param clock             The clock to pace updates by.
+     * @param random            Source of the random send times.
+     * @param spreadNanos       The window to spread each round of periodic
+     *                          updates over, in nanoseconds.
+     * @param bytesPerSecond    The most bytes to send per second, or 0 for no
+     *                          limit. Triggered updates and answers to
+     *                          requests are never delayed, but count towards
+     *                          the limit.
+     */
+    public void setPacing(Clock clock, Random random, long spreadNanos,
+                          long bytesPerSecond) {
+        this.clock = clock;
+        this.random = random;
+        this.spreadNanos = spreadNanos;
+        if (bytesPerSecond > 0) {
+            long capacity = Math.max(bytesPerSecond * RATE_BURST_MILLIS / 1000,
+                    RIPDaemon.MAX_RESPONSE_PACKET_SIZE);
+            this.sendRate = new TokenBucket(bytesPerSecond, capacity,
+                    clock.nanoTime());
+        }
+    }
+
+    /**
+     * Checks whether periodic updates are paced, in which case they are
+     * started with schedulePeriodicUpdates() rather than sendUpdates().
+     * @return  True if setPacing() has been called.
+     */
+    public boolean isPaced() {
+        return this.clock != null;
+    }
+
+    /**
+     * Schedules a paced periodic update to each neighbour at a random time
+     * within the spread window. Neighbours still waiting for their previous
+     * update, because of the rate limit, keep their place in the queue.
+     */
+    public void schedulePeriodicUpdates() {
+        long now = clock.nanoTime();
+        for (Neighbour neighbour : destinations) {
+            if (!neighbour.updateScheduled) {
+                neighbour.sendTime = now +
+                        (long) (random.nextDouble() * spreadNanos);
+                neighbour.updateScheduled = true;
+                scheduledUpdates.add(neighbour);
+            }
+        }
+    }
+
+    /**
+     * Returns the time until the next scheduled periodic update can be sent,
+     * taking the rate limit into account.
+     * @return  Nanoseconds until the next update is due, 0 if one is already
+     *          due, or Long.MAX_VALUE if none are scheduled.
+     */
+    public long nanosUntilNextSend() {
+        Neighbour next = scheduledUpdates.peek();
+        if (next == null) {
+            return Long.MAX_VALUE;
+        }
+
+        long now = clock.nanoTime();
+        long delay = next.sendTime - now;
+        if (sendRate != null) {
+            delay = Math.max(delay, sendRate.nanosUntilAvailable(now));
+        }
+        return Math.max(delay, 0);
+    }
+
+    /**
+     * Sends the scheduled periodic updates which are due, for as long as the
+     * rate limit allows. Updates are encoded from the snapshot given, rather
+     * than the table as it was when they were scheduled, so that a neighbour
+     * is never sent routes older than a triggered update it has already been
+     * sent.
+     * @param routes    A snapshot of the whole routing table.
+     */
+    public void sendDueUpdates(RoutingTableSnapshot routes) {
+        while (nanosUntilNextSend() == 0) {
+            Neighbour neighbour = scheduledUpdates.poll();
+            neighbour.updateScheduled = false;
+            sendUpdate(neighbour, routes);
         }
     }
 
     /**
-     * Sends a response message to each neighbour containing the current
-     * information in the routing table. Split horizon with poison reverse is
-     * used, so a separate message is prepared for each neighbour.
+     * Sends a response message to each neighbour containing every route in
+     * the given snapshot of the routing table. Split horizon with poison
+     * reverse is used, so a separate message is prepared for each neighbour.
+     * The messages are cached, and only re-encoded if the snapshot is of a
+     * different table version to the one they were encoded from.
+     * @param routes    A snapshot of the whole routing table.
      */
-    public void sendUpdates() {
-        for (int id : neighbours.keySet()) {
-            int portNo = neighbours.get(id);
-            sendUpdate(id, portNo);
+    public void sendUpdates(RoutingTableSnapshot routes) {
+        for (Neighbour neighbour : destinations) {
+            sendUpdate(neighbour, routes);
         }
     }
 
     /**
-     * Send a response message to the neighbour with given ID and port number.
+     * Sends a response message containing every route in the given snapshot
+     * to a single neighbour, as in sendUpdates(). Used to answer a request
+     * for the whole routing table.
      * @param neighbourId   Router ID of the neighbour to send the update to.
-     * @param portNo        Port number to send the response packet to.
+     * @param routes        A snapshot of the whole routing table.
+     */
+    public void sendUpdate(int neighbourId, RoutingTableSnapshot routes) {
+        Neighbour neighbour = findNeighbour(neighbourId);
+        if (neighbour != null) {
+            sendUpdate(neighbour, routes);
+        }
+    }
+
+    /**
+     * Sends a request for the whole routing table to each neighbour (RFC 2453
+     * section 3.9.1), so that their routes can be learnt straight away.
      */
-    private void sendUpdate(int neighbourId, int portNo) {
-        byte[] responseMessage = createResponseMessage(neighbourId);
+    public void sendRequests() {
+        encodeRequest();
+        for (Neighbour neighbour : neighbours) {
+            sendPackets(neighbour, requestPackets);
+        }
+    }
 
-        if (responseMessage.length > RIPDaemon.MAX_RESPONSE_PACKET_SIZE) {
-            System.err.println(String.format("ERROR: response message to " +
-                    "router %d too large, packet not sent.", neighbourId));
+    /**
+     * Sends a request for the whole routing table to a single neighbour, as
+     * in sendRequests().
+     * @param neighbourId   Router ID of the neighbour to send the request to.
+     */
+    public void sendRequest(int neighbourId) {
+        Neighbour neighbour = findNeighbour(neighbourId);
+        if (neighbour != null) {
+            encodeRequest();
+            sendPackets(neighbour, requestPackets);
+        }
+    }
+
+    /**
+     * Encodes a request for the whole routing table into requestPackets.
+     */
+    private void encodeRequest() {
+        requestPackets.clear();
+        ByteBuffer request = requestPackets.next();
+        request.put(RIPDaemon.REQUEST_COMMAND);
+        request.put(RIPDaemon.RIP_VERSION);
+        request.putShort((short) this.routerId);
+        request.putInt(RIPDaemon.WHOLE_TABLE_REQUEST_ID);
+        request.putInt(RIPDaemon.INFINITY);
+        request.flip();
+    }
+
+    /**
+     * Sends the answer to a request for specific entries back to the
+     * neighbour which asked. The entries are sent exactly as given, without
+     * split horizon, split across as many packets as needed.
+     * @param response  The answer, in the form [neighbourId, destId, metric,
+     *                  destId, metric, ...].
+     */
+    public void sendRequestedEntries(int[] response) {
+        Neighbour neighbour = findNeighbour(response[0]);
+        if (neighbour == null) {
             return;
         }
 
-        DatagramPacket responsePacket = new DatagramPacket(responseMessage,
-                responseMessage.length, this.destAddress, portNo);
+        requestPackets.clear();
+        int numEntries = (response.length - 1) / 2;
+        for (int start = 0; start < numEntries;
+                start += RIPDaemon.MAX_ENTRIES_PER_PACKET) {
+            int end = Math.min(start + RIPDaemon.MAX_ENTRIES_PER_PACKET,
+                    numEntries);
+            ByteBuffer message = requestPackets.next();
+            message.put(RIPDaemon.RESPONSE_COMMAND);
+            message.put(RIPDaemon.RIP_VERSION);
+            message.putShort((short) this.routerId);
+            for (int i = start; i < end; i++) {
+                message.putInt(response[1 + 2 * i]);
+                message.putInt(response[2 + 2 * i]);
+            }
+            message.flip();
+        }
+        sendPackets(neighbour, requestPackets);
+    }
 
-        try {
-            outputSocket.send(responsePacket);
-        } catch (IOException e) {
-            System.err.println(String.format("ERROR: could not send " +
-                    "response message to router %d.\n", neighbourId));
+    /**
+     * Sends a triggered update to each neighbour, containing only the routes
+     * which have changed since the last update was sent (RFC 2453 section
+     * 3.10.1). Nothing is sent if no routes have changed.
+     * @param changes   A snapshot of the changed entries of the table.
+     */
+    public void sendTriggeredUpdates(RoutingTableSnapshot changes) {
+        if (changes.numEntries() == 0) {
+            return;
+        }
+
+        for (Neighbour neighbour : destinations) {
+            encodeUpdate(neighbour, changes, triggeredPackets);
+            sendPackets(neighbour, triggeredPackets);
         }
     }
 
     /**
-     * Creates a response message represented as a byte array to be sent to
-     * the given neighbour, based on the information in the routing table.
-     * Split horizon with poison reverse is used, so any entries in the routing
-     * table which list the neighbour as their next hop will have their metric
-     * set to infinity.
-     * @param neighbourId   Router ID of neighbour the message is being sent to.
-     * @return  A response message in the form of a byte array.
+     * Sends a full update to a neighbour, re-encoding its cached packets
+     * first if they are out of date.
+     */
+    private void sendUpdate(Neighbour neighbour, RoutingTableSnapshot routes) {
+        if (neighbour.cachedVersion != routes.getVersion()) {
+            encodeUpdate(neighbour, routes, neighbour.cachedPackets);
+            neighbour.cachedVersion = routes.getVersion();
+        }
+        sendPackets(neighbour, neighbour.cachedPackets);
+    }
+
+    /**
+     * Returns the neighbour with the given router ID, or null if there is
+     * no such neighbour.
+     */
+    private Neighbour findNeighbour(int id) {
+        for (Neighbour neighbour : neighbours) {
+            if (neighbour.id == id) {
+                return neighbour;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Sends the given response packets to a neighbour.
+     * @param neighbour The neighbour to send the packets to.
+     * @param packets   The encoded response packets to send.
+     */
+    private void sendPackets(Neighbour neighbour, PacketBuffers packets) {
+        for (int i = 0; i < packets.size(); i++) {
+            ByteBuffer responseMessage = packets.get(i);
+            responseMessage.rewind();
+            if (sendRate != null) {
+                sendRate.consume(responseMessage.remaining(),
+                        clock.nanoTime());
+            }
+
+            try {
+                transport.send(responseMessage, neighbour.address);
+            } catch (IOException e) {
+                if (neighbour.isSegment) {
+                    Log.log(SEGMENT_SEND_FAILED, neighbour.address.getPort());
+                } else {
+                    Log.log(SEND_FAILED, neighbour.id);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Encodes an update for the given neighbour or segment, replacing the
+     * contents of the given packet list. If there are more entries than fit
+     * in a single packet, the response is split across as many packets as
+     * needed, each of which is a complete response message on its own. At
+     * least one packet is always produced, even if there are no entries, so
+     * that a full update of an empty table still tells the neighbour that the
+     * link is up.
+     * @param destination   The neighbour or segment the update is for.
+     * @param routes        The entries to include in the update.
+     * @param packets       The buffers to store the encoded packets in.
      */
-    private byte[] createResponseMessage(int neighbourId) {
-        // Create an buffer of the right size to hold the message.
-        int messageSize = RIPDaemon.HEADER_BYTES + table.numEntries()
-                            * RIPDaemon.RIP_ENTRY_BYTES;
-        ByteBuffer message = ByteBuffer.allocate(messageSize);
+    private void encodeUpdate(Neighbour destination,
+                              RoutingTableSnapshot routes,
+                              PacketBuffers packets) {
+        packets.clear();
+
+        int numEntries = routes.numEntries();
+        int start = 0;
+        do {
+            int end = Math.min(start + RIPDaemon.MAX_ENTRIES_PER_PACKET,
+                    numEntries);
+            if (destination.isSegment) {
+                createSegmentMessage(routes, start, end, packets.next());
+            } else {
+                createResponseMessage(destination.id, routes, start, end,
+                        packets.next());
+            }
+            start = end;
+        } while (start < numEntries);
+    }
 
+    /**
+     * Writes a response message to be sent to the given neighbour into the
+     * given buffer, containing the routing table entries in the given range.
+     * Split horizon with poison reverse is used, so any entries in the
+     * routing table which list the neighbour as their next hop will have
+     * their metric set to infinity. The buffer is flipped ready to be sent.
+     * @param neighbourId   Router ID of neighbour the message is being sent to.
+     * @param routes        The snapshot holding the entries.
+     * @param start         The index of the first entry to include.
+     * @param end           The index after the last entry to include.
+     * @param message       An empty buffer large enough to hold the message.
+     */
+    void createResponseMessage(int neighbourId, RoutingTableSnapshot routes,
+                               int start, int end, ByteBuffer message) {
         // Fill in the header fields.
         message.put(RIPDaemon.RESPONSE_COMMAND);
         message.put(RIPDaemon.RIP_VERSION);
+        // The router ID is sent as an unsigned 16-bit value, which holds any
+        // ID up to MAX_ROUTER_ID.
         message.putShort((short) this.routerId);
 
         // Add an RIP entry for each entry in the routing table, setting the
         // metric to infinity if the next hop is the neighbour itself.
-        for (int destId : table.allDestIds()) {
-            message.putInt(destId);
+        for (int i = start; i < end; i++) {
+            message.putInt(routes.destIdAt(i));
 
-            int metric = table.getMetric(destId);
-            if (table.getNextHop(destId) == neighbourId) {
+            int metric = routes.metricAt(i);
+            if (routes.nextHopAt(i) == neighbourId) {
                 metric = RIPDaemon.INFINITY;
             }
             message.putInt((metric));
         }
 
-        return message.array();
+        message.flip();
+    }
+
+    /**
+     * Writes a response message to be sent to a segment into the given
+     * buffer, containing the routing table entries in the given range. Every
+     * neighbour on the segment receives the same message, so instead of
+     * poison reverse each entry carries its next hop in the upper bits of
+     * its metric field, and receivers apply split horizon themselves. The
+     * buffer is flipped ready to be sent.
+     * @param routes        The snapshot holding the entries.
+     * @param start         The index of the first entry to include.
+     * @param end           The index after the last entry to include.
+     * @param message       An empty buffer large enough to hold the message.
+     */
+    private void createSegmentMessage(RoutingTableSnapshot routes, int start,
+                                      int end, ByteBuffer message) {
+        message.put(RIPDaemon.RESPONSE_COMMAND);
+        message.put(RIPDaemon.RIP_VERSION);
+        message.putShort((short) this.routerId);
+
+        for (int i = start; i < end; i++) {
+            message.putInt(routes.destIdAt(i));
+            message.putInt(routes.nextHopAt(i) << RIPDaemon.NEXT_HOP_SHIFT |
+                    routes.metricAt(i));
+        }
+
+        message.flip();
+    }
+
+    /**
+     * Holds the information needed to send updates to a single neighbour, or
+     * to every neighbour on a segment, along with the most recently encoded
+     * full update for it.
+     */
+    private class Neighbour {
+        private int id;
+
+        /**
+         * The address and port which messages to this neighbour are sent to.
+         */
+        private InetSocketAddress address;
+
+        /**
+         * The packets of the last full update encoded for this neighbour.
+         */
+        private PacketBuffers cachedPackets = new PacketBuffers();
+
+        /**
+         * The routing table version which cachedPackets was encoded from, or
+         * -1 if no update has been encoded yet.
+         */
+        private long cachedVersion = -1;
+
+        /**
+         * Whether this is a segment's multicast group rather than a single
+         * neighbour, in which case the id is 0.
+         */
+        private boolean isSegment;
+
+        /**
+         * Whether a paced periodic update is waiting to be sent to this
+         * neighbour, and the clock time at which it is due.
+         */
+        private boolean updateScheduled = false;
+        private long sendTime;
+
+        private Neighbour(int id, InetSocketAddress address,
+                          boolean isSegment) {
+            this.id = id;
+            this.address = address;
+            this.isSegment = isSegment;
+        }
+    }
+
+    /**
+     * A reusable list of direct byte buffers, each large enough to hold one
+     * response packet. Buffers are only allocated when the list grows beyond
+     * its previous largest size, so encoding updates of a stable size
+     * allocates nothing, and packets are sent straight from native memory.
+     */
+    private static class PacketBuffers {
+        private ArrayList<ByteBuffer> buffers = new ArrayList<>();
+
+        /**
+         * The number of buffers currently in use.
+         */
+        private int size = 0;
+
+        /**
+         * Marks all buffers as unused, ready to encode a new update.
+         */
+        private void clear() {
+            size = 0;
+        }
+
+        /**
+         * Returns the next unused buffer, cleared and ready to be written to.
+         */
+        private ByteBuffer next() {
+            if (size == buffers.size()) {
+                buffers.add(ByteBuffer.allocateDirect(
+                        RIPDaemon.MAX_RESPONSE_PACKET_SIZE));
+            }
+            ByteBuffer buffer = buffers.get(size++);
+            buffer.clear();
+            return buffer;
+        }
+
+        private int size() {
+            return size;
+        }
+
+        private ByteBuffer get(int i) {
+            return buffers.get(i);
+        }
     }
 }
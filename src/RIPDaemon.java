@@ -1,7 +1,31 @@
-import java.time.LocalTime;
+import java.io.IOException;
+import java.net.InetAddress;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class RIPDaemon {
+    /**
+     * Logged when routes saved by a previous run are restored at startup.
+     */
+    private static final Log.Message STATE_RESTORED = new Log.Message(
+            Log.Level.INFO, "Restored %d routes from the state file.", 1);
+
+    /**
+     * The messages logged while reloading the config file.
+     */
+    private static final Log.Message CONFIG_RELOADED = new Log.Message(
+            Log.Level.INFO, "Config file reloaded.", 10);
+    private static final Log.Message RESTART_NEEDED = new Log.Message(
+            Log.Level.WARN, "WARNING: %s has changed, restart the daemon to " +
+            "apply it.", 20);
+    private static final Log.Message INPUT_PORT_NOT_OPENED = new Log.Message(
+            Log.Level.ERROR, "ERROR: could not open input socket with port " +
+            "number %d.", 20);
+
     /**
      * The metric value used to represent infinity.
      */
@@ -35,11 +59,38 @@ public class RIPDaemon {
      */
     public static final int RIP_ENTRY_BYTES = 8;
 
+    /**
+     * Metrics never exceed INFINITY, so only the low 16 bits of an entry's
+     * metric field hold the metric. Updates sent to a segment put the
+     * sender's next hop for the route in the upper 16 bits, so that receivers
+     * can apply split horizon themselves. Unicast updates leave them zero.
+     */
+    public static final int METRIC_MASK = 0xFFFF;
+    public static final int NEXT_HOP_SHIFT = 16;
+
+    /**
+     * The maximum number of RIP entries which fit in a single response packet.
+     * Larger updates are split across several packets.
+     */
+    public static final int MAX_ENTRIES_PER_PACKET =
+            (MAX_RESPONSE_PACKET_SIZE - HEADER_BYTES) / RIP_ENTRY_BYTES;
+
+    /**
+     * The value to put in the command field of a request message.
+     */
+    public static final byte REQUEST_COMMAND = 1;
+
     /**
      * The value to put in the command field of a response message.
      */
     public static final byte RESPONSE_COMMAND = 2;
 
+    /**
+     * The destination ID of the single entry in a request for the whole
+     * routing table. The entry's metric is INFINITY.
+     */
+    public static final int WHOLE_TABLE_REQUEST_ID = 0;
+
     /**
      * The value to put in the version field of the response messages.
      */
@@ -58,10 +109,34 @@ public class RIPDaemon {
     private static final int GARBAGE_COLLECTION_PERIOD_RATIO = 4;
 
     /**
-     * The timeout in milliseconds for the blocking select call used to
-     * select readable input sockets.
+     * The maximum number of packets to receive from each input socket every
+     * time the daemon wakes up, before moving on to the other sockets, unless
+     * the config file sets receive-budget.
+     */
+    public static final int DEFAULT_RECEIVE_BUDGET = 64;
+
+    /**
+     * The shortest time in nanoseconds between saves of the state file once
+     * the routing table has changed, so that a burst of changes is saved
+     * once. The table is also saved every update period even if it has not
+     * changed, to keep the saved timeout timers up to date.
+     */
+    private static final long STATE_SAVE_INTERVAL = Clock.NANOS_PER_SECOND;
+
+    /**
+     * The clock used for all of the daemon's timers.
      */
-    private static final int INPUT_SELECT_TIMEOUT = 1000;
+    private Clock clock;
+
+    /**
+     * The transport used to send and receive packets.
+     */
+    private Transport transport;
+
+    /**
+     * Set to false to make run() return.
+     */
+    private volatile boolean running = true;
 
     /**
      * The routing table of this router, containing an entry for each known
@@ -81,6 +156,12 @@ public class RIPDaemon {
      */
     private Input input;
 
+    /**
+     * The shared segments joining this router to some of its neighbours.
+     * Can only be changed by restarting the daemon.
+     */
+    private ArrayList<Segment> segments;
+
     /**
      * The time to wait between sending periodic updates (in seconds).
      * Can be specified in the config file, otherwise the default value is used.
@@ -88,12 +169,12 @@ public class RIPDaemon {
     private int updatePeriod = 30;
 
     /**
-     * The next time that periodic update messages should be sent to neighbours.
-     * Set to the current time plus a random value in the range
+     * The clock time when periodic update messages should next be sent to
+     * neighbours. Set to the current time plus a random value in the range
      * [updatePeriod * 0.8, updatePeriod * 1.2] every time that a periodic
      * update is sent.
      */
-    private LocalTime nextPeriodicUpdateTime;
+    private long nextPeriodicUpdateTime;
 
     /**
      * Set to true if an update has been triggered. Only happens when the
@@ -108,24 +189,108 @@ public class RIPDaemon {
     private boolean triggeredUpdateTimerRunning = false;
 
     /**
-     * The time when the triggered update timer expires. Only meaningful if
-     * triggeredUpdateTimerRunning is true.
+     * The clock time when the triggered update timer expires. Only meaningful
+     * if triggeredUpdateTimerRunning is true.
+     */
+    private long nextTriggeredUpdateTime;
+
+    /**
+     * How the routing table is displayed each time it changes.
+     */
+    private RoutingTable.DisplayMode tableDisplay;
+
+    /**
+     * The version of the routing table when it was last displayed, used to
+     * only display the table when it has changed.
+     */
+    private long lastDisplayedVersion = -1;
+
+    /**
+     * The buffer which the table is rendered into for display, reused
+     * between renders.
+     */
+    private StringBuilder displayBuffer = new StringBuilder();
+
+    /**
+     * Snapshots of the routes to send in the next periodic or triggered
+     * update. Chosen while holding the table's lock, then sent once it has
+     * been released, so that input threads are not held up by sending.
+     */
+    private RoutingTableSnapshot pendingPeriodicUpdate = null;
+    private RoutingTableSnapshot pendingTriggeredUpdate = null;
+
+    /**
+     * Requests received from neighbours which have not been answered yet,
+     * each in the form [neighbourId] for a whole-table request, or
+     * [neighbourId, destId, metric, destId, metric, ...] for the response
+     * to a request for specific entries. Added to by whichever thread
+     * processes the request, and answered by the daemon's thread.
      */
-    private LocalTime nextTriggeredUpdateTime;
+    private ConcurrentLinkedQueue<int[]> pendingRequests =
+            new ConcurrentLinkedQueue<>();
+
+    /**
+     * Source of the random offsets applied to the update timers.
+     */
+    private Random random;
+
+    /**
+     * The config the daemon is running with, used to work out what changes
+     * when the config file is reloaded. Null if the config file is not
+     * watched for changes.
+     */
+    private ConfigFileParser config = null;
+
+    /**
+     * A reloaded config waiting to be applied by the daemon's thread, or
+     * null if there is none.
+     */
+    private AtomicReference<ConfigFileParser> pendingConfig =
+            new AtomicReference<>();
+
+    /**
+     * The file the routing table is saved to, so that it can be restored
+     * when the daemon restarts, or null if the table is not saved.
+     */
+    private StateFile stateFile = null;
+
+    /**
+     * The clock time when the state file was last saved, and the version of
+     * the table saved.
+     */
+    private long lastStateSaveTime;
+    private long lastSavedVersion = -1;
 
     /**
      * Creates a new RIP daemon using the values specified in the config file.
      * @param routerId      The router ID of the router.
-     * @param inputPorts    A list of the router's input port numbers.
      * @param outputs       A list of the router's neighbours, in the form
      *                          [inputPort, metric, routerId].
-     * @param outputPort    The port number to use for the output socket.
+     * @param outputAddresses   The address of each neighbour, in the same
+     *                          order as outputs, or null for the local host.
+     * @param segments      The shared segments joining the router to some of
+     *                          its neighbours, which are sent a single
+     *                          multicast update per segment.
      * @param updatePeriod  The update period specified in the config file, or
      *                          0 if no period was specified.
+     * @param tableDisplay  How to display the routing table when it changes.
+     * @param clock         The clock to use for all timers.
+     * @param transport     The transport to send and receive packets through,
+     *                          already listening on the router's input ports
+     *                          and segment groups.
+     * @param random        Source of the random offsets applied to the update
+     *                          timers.
      */
-    private RIPDaemon(int routerId, ArrayList<Integer> inputPorts,
-                      ArrayList<int[]> outputs, int outputPort,
-                      int updatePeriod) {
+    RIPDaemon(int routerId, ArrayList<int[]> outputs,
+              ArrayList<InetAddress> outputAddresses,
+              ArrayList<Segment> segments, int updatePeriod,
+              RoutingTable.DisplayMode tableDisplay, Clock clock,
+              Transport transport, Random random) {
+        this.clock = clock;
+        this.random = random;
+        this.tableDisplay = tableDisplay;
+        this.transport = transport;
+
         // Set the update timer period to the value in the config file if it
         // was specified.
         if (updatePeriod != 0) {
@@ -136,18 +301,223 @@ public class RIPDaemon {
         int timeoutPeriod = this.updatePeriod * TIMEOUT_PERIOD_RATIO;
         int garbageCollectionPeriod = this.updatePeriod
                 * GARBAGE_COLLECTION_PERIOD_RATIO;
-        this.table = new RoutingTable(this, routerId, outputs,
+        this.table = new RoutingTable(this, routerId, clock, outputs,
                 timeoutPeriod, garbageCollectionPeriod);
 
-        this.input = new Input(inputPorts, this.table);
+        this.segments = segments;
+        this.input = new Input(transport, this.table, this);
+        this.input.setSegments(segments);
 
-        this.output = new Output(routerId, outputPort, outputs, this.table);
+        this.output = new Output(routerId, transport, outputs,
+                outputAddresses, segments);
 
-        // Send initial response messages.
-        this.output.sendUpdates();
+        // Send initial response messages, and ask the neighbours for their
+        // tables so that routes are learnt without waiting for their next
+        // periodic updates.
+        this.output.sendUpdates(this.table.snapshot());
+        this.table.clearChanges();
+        this.output.sendRequests();
         setNextPeriodicUpdateTime();
     }
 
+    /**
+     * Returns the routing table of this router.
+     * @return  The routing table.
+     */
+    RoutingTable getTable() {
+        return this.table;
+    }
+
+    /**
+     * Returns the shared segments joining this router to some of its
+     * neighbours.
+     * @return  The router's segments.
+     */
+    ArrayList<Segment> getSegments() {
+        return this.segments;
+    }
+
+    /**
+     * Spreads each round of periodic updates out over a window, sending to
+     * each neighbour at its own random time, and optionally limits the rate
+     * at which bytes are sent. Does nothing if neither is enabled, leaving
+     * periodic updates sent to every neighbour at once.
+     * @param spreadPercent     The window to spread periodic updates over, as
+     *                          a percentage of the update period.
+     * @param bytesPerSecond    The most bytes to send per second, or 0 for no
+     *                          limit.
+     */
+    void setOutputPacing(int spreadPercent, long bytesPerSecond) {
+        if (spreadPercent == 0 && bytesPerSecond == 0) {
+            return;
+        }
+
+        long spreadNanos = this.updatePeriod * Clock.NANOS_PER_SECOND *
+                spreadPercent / 100;
+        this.output.setPacing(this.clock, this.random, spreadNanos,
+                bytesPerSecond);
+    }
+
+    /**
+     * Restores the routes saved in the given state file by a previous run of
+     * the daemon, then keeps saving the routing table to it as the table
+     * changes. Restored routes are sent to the neighbours straight away in a
+     * triggered update, and time out unless a neighbour confirms them.
+     * Should be called straight after the daemon is created.
+     * @param stateFile The file to restore the table from and save it to.
+     */
+    void setStateFile(StateFile stateFile) {
+        int restored;
+        synchronized (this.table) {
+            restored = stateFile.restore(this.table);
+            if (restored > 0) {
+                triggerUpdate();
+            }
+        }
+        if (restored > 0) {
+            Log.log(STATE_RESTORED, restored);
+        }
+
+        this.stateFile = stateFile;
+        this.lastStateSaveTime = clock.nanoTime();
+    }
+
+    /**
+     * Sets the config the daemon was started with, so that the config file
+     * can later be reloaded with reloadConfig().
+     * @param config    The parsed config file.
+     */
+    void setConfig(ConfigFileParser config) {
+        this.config = config;
+    }
+
+    /**
+     * Passes a reloaded config file to the daemon's thread to be applied,
+     * waking it up. Can be called from any thread. If several configs are
+     * passed before the daemon gets to them, only the last is applied.
+     * @param newConfig The newly parsed config file.
+     */
+    void reloadConfig(ConfigFileParser newConfig) {
+        this.pendingConfig.set(newConfig);
+        wakeup();
+    }
+
+    /**
+     * Applies a reloaded config file, if one is waiting, in place: input
+     * ports are opened and closed, neighbours are added and removed, and link
+     * metrics are changed, keeping every route which is not affected. New
+     * neighbours are sent the whole table and asked for theirs straight
+     * away. The log level and table display mode are also updated. Other
+     * parameters can only be changed by restarting the daemon.
+     */
+    private void applyPendingConfig() {
+        ConfigFileParser newConfig = this.pendingConfig.getAndSet(null);
+        if (newConfig == null || this.config == null) {
+            return;
+        }
+        ConfigFileParser oldConfig = this.config;
+
+        warnIfChanged("router-id", oldConfig.getRouterId() !=
+                newConfig.getRouterId());
+        warnIfChanged("output-port", oldConfig.getOutputPort() !=
+                newConfig.getOutputPort());
+        warnIfChanged("update-period", oldConfig.getUpdatePeriod() !=
+                newConfig.getUpdatePeriod());
+        warnIfChanged("input-threads", oldConfig.getInputThreads() !=
+                newConfig.getInputThreads());
+        warnIfChanged("receive-budget", oldConfig.getReceiveBudget() !=
+                newConfig.getReceiveBudget());
+        warnIfChanged("segments", !sameSegments(oldConfig.getSegments(),
+                newConfig.getSegments()));
+        warnIfChanged("output-spread", oldConfig.getOutputSpread() !=
+                newConfig.getOutputSpread());
+        warnIfChanged("output-rate", oldConfig.getOutputRate() !=
+                newConfig.getOutputRate());
+        warnIfChanged("state-file", !Objects.equals(oldConfig.getStateFile(),
+                newConfig.getStateFile()));
+
+        // With several input threads, the threads own the input ports.
+        ArrayList<Integer> oldPorts = oldConfig.getInputPorts();
+        ArrayList<Integer> newPorts = newConfig.getInputPorts();
+        if (oldConfig.getInputThreads() > 1) {
+            warnIfChanged("input-ports", !oldPorts.equals(newPorts));
+            newPorts = oldPorts;
+        }
+        ArrayList<Integer> openPorts = new ArrayList<>();
+        for (int port : oldPorts) {
+            if (newPorts.contains(port)) {
+                openPorts.add(port);
+            } else {
+                this.transport.closeInputPort(port);
+            }
+        }
+        for (int port : newPorts) {
+            if (openPorts.contains(port)) {
+                continue;
+            }
+            try {
+                this.transport.openInputPort(port);
+                openPorts.add(port);
+            } catch (IOException e) {
+                Log.log(INPUT_PORT_NOT_OPENED, port);
+            }
+        }
+
+        RoutingTableSnapshot routes;
+        synchronized (this.table) {
+            this.table.setNeighbours(newConfig.getOutputs());
+            routes = this.table.snapshot();
+        }
+        ArrayList<Integer> added = this.output.setNeighbours(
+                newConfig.getOutputs(), newConfig.getOutputAddresses(),
+                oldConfig.getSegments());
+        for (int neighbourId : added) {
+            this.output.sendUpdate(neighbourId, routes);
+            this.output.sendRequest(neighbourId);
+        }
+
+        Log.setLevel(newConfig.getLogLevel());
+        if (this.tableDisplay != newConfig.getTableDisplay()) {
+            this.tableDisplay = newConfig.getTableDisplay();
+            this.lastDisplayedVersion = -1;
+        }
+
+        // Keep the parameters which were not applied, so that they are still
+        // compared against what the daemon is actually running with.
+        newConfig.keepUnreloadable(oldConfig, openPorts);
+        this.config = newConfig;
+        Log.log(CONFIG_RELOADED);
+    }
+
+    /**
+     * Logs a warning that a config parameter has changed but cannot be
+     * applied without restarting the daemon.
+     */
+    private static void warnIfChanged(String parameter, boolean changed) {
+        if (changed) {
+            Log.log(RESTART_NEEDED, parameter);
+        }
+    }
+
+    /**
+     * Checks whether two lists of segments have the same groups and
+     * neighbours, in the same order.
+     */
+    private static boolean sameSegments(ArrayList<Segment> a,
+                                        ArrayList<Segment> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getGroup().equals(b.get(i).getGroup()) ||
+                    !Arrays.equals(a.get(i).getNeighbourIds(),
+                            b.get(i).getNeighbourIds())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Schedules a triggered update to be sent, should be called whenever the
      * metric of a route is set to infinity.
@@ -161,10 +531,11 @@ public class RIPDaemon {
      * period, offset by a small random amount.
      */
     private void setNextPeriodicUpdateTime() {
-        double randomMultiplier = Math.random() * 0.4 + 0.8;
+        double randomMultiplier = random.nextDouble() * 0.4 + 0.8;
         double randomPeriodSeconds = updatePeriod * randomMultiplier;
-        long randomPeriodNanos = (long) (randomPeriodSeconds * 1000000000);
-        nextPeriodicUpdateTime = LocalTime.now().plusNanos(randomPeriodNanos);
+        long randomPeriodNanos = (long) (randomPeriodSeconds
+                * Clock.NANOS_PER_SECOND);
+        nextPeriodicUpdateTime = clock.nanoTime() + randomPeriodNanos;
     }
 
     /**
@@ -172,30 +543,41 @@ public class RIPDaemon {
      * between 1 and 5 seconds.
      */
     private void setNextTriggeredUpdateTime() {
-        double waitTimeSeconds = Math.random() * 4 + 1;
-        long waitTimeNanos  = (long) (waitTimeSeconds * 1000000000);
-        nextTriggeredUpdateTime = LocalTime.now().plusNanos(waitTimeNanos);
+        double waitTimeSeconds = random.nextDouble() * 4 + 1;
+        long waitTimeNanos = (long) (waitTimeSeconds * Clock.NANOS_PER_SECOND);
+        nextTriggeredUpdateTime = clock.nanoTime() + waitTimeNanos;
     }
 
     /**
-     * Sends an update either if it's time to send a periodic update or if an
-     * update has been triggered, provided enough time has passed since the
-     * last triggered update.
+     * Prepares an update to be sent either if it's time to send a periodic
+     * update or if an update has been triggered, provided enough time has
+     * passed since the last triggered update. The routes to send are taken
+     * from a snapshot, and the table's changes are cleared, so the update can
+     * be sent by sendPendingUpdates() without holding the table's lock.
      */
-    private void sendUpdateIfTime() {
+    private void prepareUpdateIfTime() {
+        long now = clock.nanoTime();
         if (!this.triggeredUpdateTimerRunning ||
-                LocalTime.now().isAfter(this.nextTriggeredUpdateTime)) {
+                now - this.nextTriggeredUpdateTime > 0) {
 
-            if (LocalTime.now().isAfter(nextPeriodicUpdateTime)) {
+            if (now - nextPeriodicUpdateTime > 0) {
                 // Send periodic update (suppresses any triggered updates).
-                this.output.sendUpdates();
+                // Paced updates are encoded from the table as it is when
+                // each one is due.
+                if (this.output.isPaced()) {
+                    this.output.schedulePeriodicUpdates();
+                } else {
+                    this.pendingPeriodicUpdate = this.table.snapshot();
+                }
+                this.table.clearChanges();
                 setNextPeriodicUpdateTime();
                 this.updateTriggered = false;
                 this.triggeredUpdateTimerRunning = false;
 
             } else if (this.updateTriggered) {
-                // Send triggered update
-                this.output.sendUpdates();
+                // Send triggered update containing only the changed routes.
+                this.pendingTriggeredUpdate = this.table.changesSnapshot();
+                this.table.clearChanges();
                 this.updateTriggered = false;
                 this.triggeredUpdateTimerRunning = true;
                 setNextTriggeredUpdateTime();
@@ -204,22 +586,203 @@ public class RIPDaemon {
     }
 
     /**
-     * Enter an infinite loop to wait for events and handle them as needed.
+     * Returns the time until the routing table should next be saved to the
+     * state file: STATE_SAVE_INTERVAL after the last save if the table has
+     * changed since, otherwise an update period after it. Should only be
+     * called while holding the table's lock, with a state file set.
+     */
+    private long nanosUntilStateSave(long now) {
+        long interval = this.updatePeriod * Clock.NANOS_PER_SECOND;
+        if (this.table.getVersion() != this.lastSavedVersion) {
+            interval = STATE_SAVE_INTERVAL;
+        }
+        return this.lastStateSaveTime + interval - now;
+    }
+
+    /**
+     * Queues a request from a neighbour to be answered by the daemon's
+     * thread, waking it up in case the request was processed on another
+     * thread.
+     * @param request   The request, in the form [neighbourId] for a request
+     *                  for the whole table, or [neighbourId, destId, metric,
+     *                  ...] holding the response to a request for specific
+     *                  entries.
+     */
+    void requestReceived(int[] request) {
+        this.pendingRequests.add(request);
+        wakeup();
+    }
+
+    /**
+     * Answers any requests received from neighbours since the last call.
+     * Whole-table requests are answered with a normal full update, using
+     * split horizon, while requests for specific entries are answered with
+     * the entries as they were looked up (RFC 2453 section 3.9.1).
+     */
+    private void answerRequests() {
+        RoutingTableSnapshot routes = null;
+        int[] request;
+        while ((request = this.pendingRequests.poll()) != null) {
+            if (request.length > 1) {
+                this.output.sendRequestedEntries(request);
+                continue;
+            }
+
+            if (routes == null) {
+                synchronized (this.table) {
+                    routes = this.table.snapshot();
+                }
+            }
+            this.output.sendUpdate(request[0], routes);
+        }
+    }
+
+    /**
+     * Sends the update prepared by prepareUpdateIfTime(), if there is one.
+     */
+    private void sendPendingUpdates() {
+        if (this.pendingPeriodicUpdate != null) {
+            this.output.sendUpdates(this.pendingPeriodicUpdate);
+            this.pendingPeriodicUpdate = null;
+        }
+        if (this.pendingTriggeredUpdate != null) {
+            this.output.sendTriggeredUpdates(this.pendingTriggeredUpdate);
+            this.pendingTriggeredUpdate = null;
+        }
+    }
+
+    /**
+     * Returns the time until the next timer-driven event needs to be handled:
+     * a periodic update, a triggered update (once the triggered update timer
+     * allows it), a paced update to a neighbour, or the expiry of a route's
+     * timeout or garbage-collection timer.
+     * @return  Nanoseconds until the next event, or 0 if one is already due.
+     */
+    long nanosUntilNextEvent() {
+        synchronized (this.table) {
+            long now = clock.nanoTime();
+
+            // A triggered update is due straight away, otherwise wait for the
+            // periodic update. Neither can be sent until the triggered update
+            // timer expires.
+            long updateDelay = nextPeriodicUpdateTime - now;
+            if (this.updateTriggered) {
+                updateDelay = 0;
+            }
+            if (this.triggeredUpdateTimerRunning) {
+                updateDelay = Math.max(updateDelay,
+                        this.nextTriggeredUpdateTime - now);
+            }
+
+            long delay = Math.min(updateDelay,
+                    this.table.nanosUntilNextTimer());
+            if (this.output.isPaced()) {
+                delay = Math.min(delay, this.output.nanosUntilNextSend());
+            }
+            if (this.stateFile != null) {
+                delay = Math.min(delay, nanosUntilStateSave(now));
+            }
+            return Math.max(delay, 0);
+        }
+    }
+
+    /**
+     * Enter a loop to wait for events and handle them as needed, until stop()
+     * is called. Closes the transport before returning.
+     */
+    void run() {
+        while (this.running) {
+            handleEvents(nanosUntilNextEvent());
+        }
+        this.transport.close();
+    }
+
+    /**
+     * Makes run() return once it has finished handling the current events.
+     * The thread running the daemon should be interrupted afterwards, so that
+     * it does not keep waiting for packets.
+     */
+    void stop() {
+        this.running = false;
+    }
+
+    /**
+     * Makes the daemon handle events straight away, rather than waiting for
+     * its next timer. Called by input threads after changing the table.
      */
-    private void run() {
-        while (true) {
-            // Use a blocking select call to wait for response packets to be
-            // received, then process any received packets.
-            input.waitForMessages(INPUT_SELECT_TIMEOUT);
+    void wakeup() {
+        this.transport.wakeup();
+    }
 
-            sendUpdateIfTime();
+    /**
+     * Waits for response packets to be received, up to the given time, then
+     * processes any received packets and handles any timers which are due.
+     * The routing table's lock is only held while handling timers and
+     * taking snapshots, since input threads may be updating the table at the
+     * same time. Updates are sent, and the table displayed and saved, from
+     * snapshots.
+     * @param timeout   The longest time to wait for packets in nanoseconds.
+     */
+    void handleEvents(long timeout) {
+        input.waitForMessages(timeout);
+        applyPendingConfig();
+
+        RoutingTableSnapshot snapshot = null;
+        RoutingTableSnapshot pacedRoutes = null;
+        RoutingTableSnapshot stateRoutes = null;
+        long now;
+        synchronized (this.table) {
+            // Check the route timers first, so that any update they trigger
+            // is sent straight away.
             this.table.checkTimers();
+            prepareUpdateIfTime();
+
+            if (this.output.isPaced() &&
+                    this.output.nanosUntilNextSend() == 0) {
+                pacedRoutes = this.table.snapshot();
+            }
+            if (this.tableDisplay != RoutingTable.DisplayMode.OFF) {
+                snapshot = this.table.snapshot();
+            }
+
+            now = clock.nanoTime();
+            if (this.stateFile != null && nanosUntilStateSave(now) <= 0) {
+                stateRoutes = this.table.currentSnapshot();
+                this.lastSavedVersion = stateRoutes.getVersion();
+                this.lastStateSaveTime = now;
+            }
+        }
 
-            // Display the current state of the routing table.
-            System.out.println(this.table);
+        sendPendingUpdates();
+        if (pacedRoutes != null) {
+            this.output.sendDueUpdates(pacedRoutes);
+        }
+        answerRequests();
+        if (snapshot != null) {
+            displayTableIfChanged(snapshot);
+        }
+        if (stateRoutes != null) {
+            this.stateFile.save(stateRoutes, now);
         }
     }
 
+    /**
+     * Displays a snapshot of the routing table, if the table has changed
+     * since it was last displayed.
+     * @param snapshot  A snapshot of the current routing table.
+     */
+    private void displayTableIfChanged(RoutingTableSnapshot snapshot) {
+        if (snapshot.getVersion() == this.lastDisplayedVersion) {
+            return;
+        }
+
+        this.displayBuffer.setLength(0);
+        snapshot.render(this.tableDisplay, clock.nanoTime(),
+                this.displayBuffer);
+        System.out.println(this.displayBuffer);
+        this.lastDisplayedVersion = snapshot.getVersion();
+    }
+
     public static void main(String[] args) {
         if (args.length != 1) {
             Error.error("Usage: java RIPDaemon <config-filename>");
@@ -227,13 +790,49 @@ public class RIPDaemon {
 
         ConfigFileParser parser = new ConfigFileParser(args[0]);
         parser.parseFile();
+        Log.setLevel(parser.getLogLevel());
+
+        // With several input threads, the threads own the input ports and
+        // the daemon's transport is only used for sending.
+        InputWorkers workers = null;
+        ArrayList<Integer> daemonInputPorts = parser.getInputPorts();
+        if (parser.getInputThreads() > 1) {
+            workers = new InputWorkers(parser.getInputPorts(),
+                    parser.getInputThreads(), parser.getReceiveBudget());
+            daemonInputPorts = new ArrayList<>();
+        }
+
+        Transport transport = new UdpTransport(daemonInputPorts,
+                parser.getOutputPort(), parser.getReceiveBudget());
+        for (Segment segment : parser.getSegments()) {
+            if (workers != null) {
+                workers.joinGroup(segment.getGroup());
+            } else {
+                transport.joinGroup(segment.getGroup());
+            }
+        }
 
         RIPDaemon daemon = new RIPDaemon(parser.getRouterId(),
-                                         parser.getInputPorts(),
                                          parser.getOutputs(),
-                                         parser.getOutputPort(),
-                                         parser.getUpdatePeriod());
+                                         parser.getOutputAddresses(),
+                                         parser.getSegments(),
+                                         parser.getUpdatePeriod(),
+                                         parser.getTableDisplay(),
+                                         new SystemClock(),
+                                         transport,
+                                         new Random());
+        daemon.setOutputPacing(parser.getOutputSpread(),
+                parser.getOutputRate());
+        if (parser.getStateFile() != null) {
+            daemon.setStateFile(new StateFile(parser.getStateFile()));
+        }
 
+        daemon.setConfig(parser);
+        new ConfigReloader(args[0], daemon).start();
+
+        if (workers != null) {
+            workers.start(daemon);
+        }
         daemon.run();
     }
 }
@@ -1,30 +1,120 @@
-import java.time.LocalTime;
-import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Set;
+import java.util.Arrays;
 
 public class RoutingTable {
     /**
-     * The routing table, containing an entry for each known destination.
-     * Each entry maps the router ID of the destination to a RoutingTableEntry
-     * which contains information about the destination such as the metric
-     * and the next hop router to reach it.
+     * The ways in which the routing table can be displayed.
+     * FULL shows a row for each entry including its timers, COMPACT shows all
+     * the entries on a single line in the form destId/nextHop/metric, and
+     * OFF disables displaying the table.
      */
-    private HashMap<Integer, RoutingTableEntry> table = new HashMap<>();
+    public enum DisplayMode {
+        FULL, COMPACT, OFF
+    }
+
+    /**
+     * The initial number of entries which the routing table can hold before
+     * its arrays need to grow.
+     */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /**
+     * The length of a tick of the timer wheel in nanoseconds, which is the
+     * granularity with which timeout and garbage-collection timers expire.
+     */
+    private static final long TIMER_TICK_NANOS = 100000000L;
+
+    /**
+     * Maps the router ID of each known destination to the slot which holds
+     * its entry. Entries are stored in a structure-of-arrays layout, with the
+     * fields of the entry in slot i found at index i of each of the arrays
+     * below. Slots 0 to size - 1 are always occupied, so the whole table can
+     * be scanned sequentially without any lookups.
+     */
+    private IntIntMap slots = new IntIntMap(INITIAL_CAPACITY);
+
+    /**
+     * The number of entries in the routing table.
+     */
+    private int size = 0;
+
+    /**
+     * The destination router ID, metric and next hop router ID of each entry.
+     */
+    private int[] destIds = new int[INITIAL_CAPACITY];
+    private int[] metrics = new int[INITIAL_CAPACITY];
+    private int[] nextHops = new int[INITIAL_CAPACITY];
+
+    /**
+     * Whether or not the garbage collection timer for each entry has
+     * been started. Each entry has exactly one timer running in the timer
+     * wheel: its garbage-collection timer if this is true, otherwise its
+     * timeout timer.
+     */
+    private boolean[] garbageCollectionStarted = new boolean[INITIAL_CAPACITY];
+
+    /**
+     * Holds the running timer of each entry, indexed by slot, so that
+     * checkTimers() only needs to visit entries whose timers have expired.
+     */
+    private TimerWheel timers;
+
+    /**
+     * Buffer used by checkTimers() to hold the dest IDs of entries whose
+     * timers have expired.
+     */
+    private int[] expiredDestIds = new int[INITIAL_CAPACITY];
+
+    /**
+     * The journal of entries whose route has changed since the last update
+     * was sent, in the form of a list of slots. Only these entries need to be
+     * included in triggered updates.
+     */
+    private int[] changedSlots = new int[INITIAL_CAPACITY];
+
+    /**
+     * The number of slots in the changedSlots journal.
+     */
+    private int numChanged = 0;
+
+    /**
+     * Incremented every time an entry is added, removed or has its metric or
+     * next hop changed, so that encoded copies of the table can tell when
+     * they are out of date.
+     */
+    private long version = 0;
+
+    /**
+     * The index of each slot in the changedSlots journal, or -1 if the entry
+     * in the slot has not changed since the last update.
+     */
+    private int[] changedIndex = newFilledArray(INITIAL_CAPACITY, -1);
 
     /**
      * The neighbours of this router, represented as a map from router ID to
-     * metric. This map is populated with the values in the config file,
-     * then never modified, and allows the router to keep a record of its
-     * neighbours even if one of them crashes and is therefore removed from
-     * the routing table.
+     * metric. This map is populated with the values in the config file, and
+     * only modified if the config file is reloaded, allowing the router to
+     * keep a record of its neighbours even if one of them crashes and is
+     * therefore removed from the routing table.
      */
-    private HashMap<Integer, Integer> neighbours = new HashMap<>();
+    private IntIntMap neighbours = new IntIntMap();
+
+    /**
+     * The buffer which the table is rendered into, reused between renders.
+     */
+    private StringBuilder renderBuffer = new StringBuilder();
+
+    /**
+     * The most recent snapshot of the whole table taken by snapshot(), which
+     * any thread can read without holding the table's lock.
+     */
+    private volatile RoutingTableSnapshot publishedSnapshot;
 
     /**
      * The main routing daemon instance which this table belongs to.
      * Needed to allow updates to be triggered when a route is set to infinity.
+     * Null for a standalone table, such as one being benchmarked, in which
+     * case no updates are triggered.
      */
     private RIPDaemon daemon;
 
@@ -34,34 +124,48 @@ public class RoutingTable {
     private int routerId;
 
     /**
-     * The time in seconds after which routing table entries timeout.
+     * The clock used for the timeout and garbage-collection timers.
+     */
+    private Clock clock;
+
+    /**
+     * The time in nanoseconds after which routing table entries timeout.
      */
-    private int timeoutPeriod;
+    private long timeoutPeriod;
 
     /**
-     * The time in seconds after which expired routing table entries are
+     * The time in nanoseconds after which expired routing table entries are
      * removed from the table.
      */
-    private int garbageCollectionPeriod;
+    private long garbageCollectionPeriod;
 
     /**
      * Takes a list containing information about each of the router's
      * neighbours in the form [inputPort, metric, routerId], and initialises
      * the routing table and neighbours map with this information.
-     * @param daemon        The RIP daemon instance which this table belongs to.
+     * @param daemon        The RIP daemon instance which this table belongs to,
+     *                      or null if updates should not be triggered.
      * @param routerId      The router ID of the router this table belongs to.
+     * @param clock         The clock to use for route timers.
      * @param neighbours    A list containing information about each neighbour.
-     * @param timeoutPeriod Time after which routing table entries timeout.
-     * @param garbageCollectionPeriod  Time after which expired entries are
-     *                                 deleted from the routing table.
+     * @param timeoutPeriod Time in seconds after which routing table entries
+     *                      timeout.
+     * @param garbageCollectionPeriod  Time in seconds after which expired
+     *                                 entries are deleted from the routing
+     *                                 table.
      */
-    public RoutingTable(RIPDaemon daemon, int routerId,
+    public RoutingTable(RIPDaemon daemon, int routerId, Clock clock,
                         ArrayList<int[]> neighbours, int timeoutPeriod,
                         int garbageCollectionPeriod) {
         this.daemon = daemon;
         this.routerId = routerId;
-        this.timeoutPeriod = timeoutPeriod;
-        this.garbageCollectionPeriod = garbageCollectionPeriod;
+        this.clock = clock;
+        this.timeoutPeriod = timeoutPeriod * Clock.NANOS_PER_SECOND;
+        this.garbageCollectionPeriod = garbageCollectionPeriod
+                * Clock.NANOS_PER_SECOND;
+        this.timers = new TimerWheel(TIMER_TICK_NANOS,
+                Math.max(this.timeoutPeriod, this.garbageCollectionPeriod),
+                INITIAL_CAPACITY, clock.nanoTime());
 
         for (int[] neighbour : neighbours) {
             int metric = neighbour[1];
@@ -79,32 +183,51 @@ public class RoutingTable {
      * @param nextHop  The ID of the next hop router to reach the destination.
      */
     public void addEntry(int destId, int metric, int nextHop) {
-        RoutingTableEntry entry = new RoutingTableEntry(destId, metric, nextHop);
-        entry.resetTimeout();
-        this.table.put(destId, entry);
+        if (size == destIds.length) {
+            grow();
+        }
+
+        int slot = size++;
+        this.slots.put(destId, slot);
+        destIds[slot] = destId;
+        metrics[slot] = metric;
+        nextHops[slot] = nextHop;
+        resetTimeoutAt(slot);
+        markChanged(slot);
     }
 
     /**
-     * Checks the timeout and garbage-collection timers of each routing table
-     * entry, and performs the appropriate actions if any timers have expired.
-     *
+     * Checks for routing table entries whose timeout or garbage-collection
+     * timers have expired, and performs the appropriate actions for them.
+     * Only entries with expired timers are visited.
      */
     public void checkTimers() {
-        ArrayList<Integer> toDelete = new ArrayList<>();
+        int numExpired = timers.expire(clock.nanoTime());
 
-        for (RoutingTableEntry entry : this.table.values()) {
-            if (entry.timeoutExpired()) {
-                startDeletion(entry.destId);
-            }
+        // Record the dest IDs first, since removing an entry moves another
+        // entry into its slot.
+        for (int i = 0; i < numExpired; i++) {
+            expiredDestIds[i] = destIds[timers.expiredSlot(i)];
+        }
 
-            if (entry.garbageCollectionExpired()) {
-                toDelete.add(entry.destId);
+        for (int i = 0; i < numExpired; i++) {
+            int slot = slots.get(expiredDestIds[i]);
+            if (garbageCollectionStarted[slot]) {
+                removeAt(slot);
+            } else {
+                startDeletionAt(slot);
             }
         }
+    }
 
-        for (int destId : toDelete) {
-            this.table.remove(destId);
-        }
+    /**
+     * Returns the time until checkTimers() next needs to be called, based on
+     * the earliest running timeout or garbage-collection timer.
+     * @return  Nanoseconds until the next timer expires (0 if one already has),
+     *          or Long.MAX_VALUE if no timers are running.
+     */
+    public long nanosUntilNextTimer() {
+        return timers.nanosUntilNextExpiry(clock.nanoTime());
     }
 
     /**
@@ -113,7 +236,7 @@ public class RoutingTable {
      * @param destId    The dest ID of the entry for which to reset timeout.
      */
     public void resetTimeout(int destId) {
-        table.get(destId).resetTimeout();
+        resetTimeoutAt(slots.get(destId));
     }
 
     /**
@@ -124,57 +247,164 @@ public class RoutingTable {
      * @param destId    The destination ID of the routing table entry to delete.
      */
     public void startDeletion(int destId) {
-        RoutingTableEntry entry = this.table.get(destId);
-        entry.startGarbageCollectionTimer();
-        entry.metric = RIPDaemon.INFINITY;
-        this.daemon.triggerUpdate();
+        startDeletionAt(slots.get(destId));
     }
 
     @Override
     public String toString() {
-        String separator = new String(new char[77]).replace("\0", "-") + "\n";
-        String result = "";
-        result += separator;
-        result += String.format("Router %d\n", routerId);
-        result += separator;
-        result += String.format("%-13s | %-13s | %-13s | %-13s | %-13s\n",
-                "Dest ID", "Next Hop ID", "Metric", "Timeout Timer", "GC Timer");
-        result += separator;
-
-        for (RoutingTableEntry entry : this.table.values()) {
-            String timeoutTime = "-";
-            if (entry.secondsUntilTimeout() >= 0) {
-                timeoutTime = Long.toString(entry.secondsUntilTimeout());
-            }
+        return render(DisplayMode.FULL);
+    }
 
-            String garbageCollectionTime = "-";
-            if (entry.secondsUntilGC() >= 0) {
-                garbageCollectionTime = Long.toString(entry.secondsUntilGC());
-            }
+    /**
+     * Renders the routing table in the given display mode, showing its timers
+     * as they are now. The text is built in a single reused buffer, so
+     * rendering does not need to build up a string for every row.
+     * @param mode  The display mode to render the table in.
+     * @return      The rendered table, or an empty string if mode is OFF.
+     */
+    public String render(DisplayMode mode) {
+        StringBuilder result = this.renderBuffer;
+        result.setLength(0);
+        takeSnapshot(size, null).render(mode, clock.nanoTime(), result);
+        return result.toString();
+    }
 
-            result += String.format("%-13s | %-13s | %-13s | %-13s | %-13s\n",
-                    entry.destId, entry.nextHop, entry.metric,
-                    timeoutTime, garbageCollectionTime);
+    /**
+     * Returns a snapshot of the whole table at its current version, and
+     * publishes it for getPublishedSnapshot(). If the table has not changed
+     * since the last snapshot was taken, that snapshot is returned again,
+     * even though the timers it holds may have moved on since.
+     * Must be called while holding the table's lock if other threads may be
+     * updating the table.
+     * @return  A snapshot of the table.
+     */
+    public RoutingTableSnapshot snapshot() {
+        RoutingTableSnapshot snapshot = publishedSnapshot;
+        if (snapshot == null || snapshot.getVersion() != version) {
+            snapshot = takeSnapshot(size, null);
+            publishedSnapshot = snapshot;
         }
+        return snapshot;
+    }
+
+    /**
+     * Returns a new snapshot of the whole table with its timers as they are
+     * now, without publishing it. Unlike snapshot(), never returns an older
+     * snapshot, since timers are reset without changing the table's version.
+     * Must be called while holding the table's lock if other threads may be
+     * updating the table.
+     * @return  A snapshot of the table.
+     */
+    public RoutingTableSnapshot currentSnapshot() {
+        return takeSnapshot(size, null);
+    }
 
-        return result;
+    /**
+     * Returns a snapshot of only the entries whose route has changed since
+     * the last call to clearChanges(), for building a triggered update.
+     * Must be called while holding the table's lock if other threads may be
+     * updating the table.
+     * @return  A snapshot of the changed entries.
+     */
+    public RoutingTableSnapshot changesSnapshot() {
+        return takeSnapshot(numChanged, changedSlots);
     }
 
     /**
-     * Return a set of all the destination IDs which currently have a route in
-     * the table.
-     * @return  A set of all dest IDs currently in the routing table.
+     * Returns the most recent snapshot of the whole table taken by
+     * snapshot(). Can be called from any thread without locking, for
+     * monitoring or exporting the table. The daemon takes a snapshot for
+     * every periodic update and every time it displays the table.
+     * @return  The latest published snapshot, or null if none has been taken.
      */
-    public Set<Integer> allDestIds() {
-        return table.keySet();
+    public RoutingTableSnapshot getPublishedSnapshot() {
+        return publishedSnapshot;
     }
 
     /**
-     * Returns the number of entries in the routing table.
+     * Returns the number of entries in the routing table. The entries occupy
+     * slots 0 to numEntries() - 1, which can be passed to destIdAt(),
+     * metricAt() and nextHopAt() to scan the whole table.
      * @return  Number of entries in the routing table.
      */
     public int numEntries() {
-        return table.size();
+        return size;
+    }
+
+    /**
+     * Returns the destination router ID of the entry in the given slot.
+     * @param slot  A slot between 0 and numEntries() - 1.
+     * @return      The destination ID of the entry.
+     */
+    public int destIdAt(int slot) {
+        return destIds[slot];
+    }
+
+    /**
+     * Returns the metric of the entry in the given slot.
+     * @param slot  A slot between 0 and numEntries() - 1.
+     * @return      The metric of the entry.
+     */
+    public int metricAt(int slot) {
+        return metrics[slot];
+    }
+
+    /**
+     * Returns the next hop router ID of the entry in the given slot.
+     * @param slot  A slot between 0 and numEntries() - 1.
+     * @return      The next hop ID of the entry.
+     */
+    public int nextHopAt(int slot) {
+        return nextHops[slot];
+    }
+
+    /**
+     * Returns the number of entries whose route has changed since the last
+     * call to clearChanges(). The slots of these entries can be found by
+     * passing 0 to numChangedEntries() - 1 to changedSlotAt().
+     * @return  Number of changed entries in the routing table.
+     */
+    public int numChangedEntries() {
+        return numChanged;
+    }
+
+    /**
+     * Returns the slot of one of the entries whose route has changed since the
+     * last call to clearChanges().
+     * @param i     An index between 0 and numChangedEntries() - 1.
+     * @return      The slot of the changed entry.
+     */
+    public int changedSlotAt(int i) {
+        return changedSlots[i];
+    }
+
+    /**
+     * Returns the current version of the routing table. The version changes
+     * whenever the contents of a response message built from the table
+     * could change.
+     * @return  The version of the routing table.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Clears the changed flag of every entry, should be called once an update
+     * containing the changed entries has been sent to every neighbour.
+     */
+    public void clearChanges() {
+        for (int i = 0; i < numChanged; i++) {
+            changedIndex[changedSlots[i]] = -1;
+        }
+        numChanged = 0;
+    }
+
+    /**
+     * Returns the router ID of the router this table belongs to.
+     * @return  The router ID.
+     */
+    public int getRouterId() {
+        return routerId;
     }
 
     /**
@@ -184,23 +414,126 @@ public class RoutingTable {
      *                  even if it has timed out.
      */
     public boolean hasRoute(int destId) {
-        return table.containsKey(destId);
+        return slots.containsKey(destId);
     }
 
     public int getMetric(int destId) {
-        return table.get(destId).metric;
+        return metrics[slots.get(destId)];
     }
 
     public void setMetric(int destId, int metric) {
-        table.get(destId).metric = metric;
+        int slot = slots.get(destId);
+        if (metrics[slot] != metric) {
+            metrics[slot] = metric;
+            markChanged(slot);
+        }
     }
 
     public int getNextHop(int destId) {
-        return table.get(destId).nextHop;
+        return nextHops[slots.get(destId)];
     }
 
     public void setNextHop(int destId, int nextHop) {
-        table.get(destId).nextHop = nextHop;
+        int slot = slots.get(destId);
+        if (nextHops[slot] != nextHop) {
+            nextHops[slot] = nextHop;
+            markChanged(slot);
+        }
+    }
+
+    /**
+     * Replaces the router's neighbours with those from a reloaded config
+     * file, keeping every route which is not affected. Routes through a
+     * neighbour which has gone are deleted, routes through a neighbour whose
+     * link metric has changed have their metric adjusted by the difference,
+     * and a direct route is added for each new neighbour unless a better
+     * route to it is already known. An update is triggered if any route
+     * changed.
+     * @param outputs   The new neighbours, in the form [inputPort, metric,
+     *                  routerId].
+     */
+    public void setNeighbours(ArrayList<int[]> outputs) {
+        IntIntMap updated = new IntIntMap(outputs.size());
+        for (int[] output : outputs) {
+            updated.put(output[2], output[1]);
+        }
+
+        long oldVersion = this.version;
+        for (int slot = 0; slot < size; slot++) {
+            int nextHop = nextHops[slot];
+            if (!this.neighbours.containsKey(nextHop) ||
+                    metrics[slot] == RIPDaemon.INFINITY) {
+                continue;
+            }
+
+            if (!updated.containsKey(nextHop)) {
+                startDeletionAt(slot);
+                continue;
+            }
+
+            int metric = metrics[slot] - this.neighbours.get(nextHop) +
+                    updated.get(nextHop);
+            if (metric >= RIPDaemon.INFINITY) {
+                startDeletionAt(slot);
+            } else if (metric != metrics[slot]) {
+                metrics[slot] = metric;
+                markChanged(slot);
+            }
+        }
+
+        for (int[] output : outputs) {
+            int id = output[2];
+            int metric = output[1];
+            if (this.neighbours.containsKey(id)) {
+                continue;
+            }
+
+            if (!hasRoute(id)) {
+                addEntry(id, metric, id);
+            } else if (metric < getMetric(id)) {
+                setMetric(id, metric);
+                setNextHop(id, id);
+                resetTimeout(id);
+            }
+        }
+
+        this.neighbours = updated;
+        if (this.version != oldVersion) {
+            triggerUpdate();
+        }
+    }
+
+    /**
+     * Adds a route saved before the daemon restarted, unless the table
+     * already has a route to the destination, the destination is this
+     * router or not a valid router ID, or the next hop is no longer a
+     * neighbour. The route's timeout timer carries on from where it was,
+     * rather than being reset, so that the route times out as it would have
+     * done unless a neighbour confirms it. The route is marked as changed, so
+     * it is sent in the next update.
+     * @param destId            The router ID of the destination.
+     * @param metric            The metric to reach the destination.
+     * @param nextHop           The ID of the next hop router.
+     * @param remainingTimeout  Nanoseconds left on the route's timeout timer.
+     * @return                  True if the route was added.
+     */
+    public boolean restoreEntry(int destId, int metric, int nextHop,
+                                long remainingTimeout) {
+        // The file may be corrupt, so the ID is checked before it is used to
+        // look up the route.
+        if (destId < RIPDaemon.MIN_ROUTER_ID ||
+                destId > RIPDaemon.MAX_ROUTER_ID ||
+                destId == routerId || hasRoute(destId) ||
+                !this.neighbours.containsKey(nextHop) ||
+                metric < 1 || metric >= RIPDaemon.INFINITY ||
+                remainingTimeout <= 0) {
+            return false;
+        }
+
+        addEntry(destId, metric, nextHop);
+        timers.schedule(slots.get(destId), clock.nanoTime() +
+                Math.min(remainingTimeout, timeoutPeriod));
+        return true;
     }
 
     public boolean isNeighbour(int id) {
@@ -211,105 +544,137 @@ public class RoutingTable {
         return this.neighbours.get(id);
     }
 
-
     /**
-     * Instances of RoutingTableEntry represent a single entry in the routing
-     * table, containing the destination router ID, metric, next hop router ID,
-     * and timeout the garbage collection timers.
+     * Resets the timeout timer for the entry in the given slot, also
+     * cancelling the garbage collection timer if running.
      */
-    private class RoutingTableEntry {
-
-        private int destId;
-
-        private int metric;
-
-        private int nextHop;
-
-        /**
-         * The time when the timeout timer for this entry will expire.
-         */
-        private LocalTime timeoutTime;
-
-        /**
-         * The time when the garbage-collection timer will expire.
-         * Only meaningful if garbageCollectionStarted is true.
-         */
-        private LocalTime garbageCollectionTime;
+    private void resetTimeoutAt(int slot) {
+        timers.schedule(slot, clock.nanoTime() + timeoutPeriod);
+        garbageCollectionStarted[slot] = false;
+    }
 
-        /**
-         * Whether or not the garbage collection timer for this entry has
-         * been started.
-         */
-        private boolean garbageCollectionStarted = false;
+    /**
+     * Sets the metric of the entry in the given slot to infinity, starts its
+     * garbage collection timer and triggers an update.
+     */
+    private void startDeletionAt(int slot) {
+        garbageCollectionStarted[slot] = true;
+        timers.schedule(slot, clock.nanoTime() + garbageCollectionPeriod);
+        metrics[slot] = RIPDaemon.INFINITY;
+        markChanged(slot);
+        triggerUpdate();
+    }
 
-        private RoutingTableEntry(int destId, int metric, int nextHop) {
-            this.destId = destId;
-            this.metric = metric;
-            this.nextHop = nextHop;
+    /**
+     * Asks the daemon to send a triggered update, if the table has one.
+     */
+    private void triggerUpdate() {
+        if (this.daemon != null) {
+            this.daemon.triggerUpdate();
         }
+    }
 
-        /**
-         * Resets the timeout timer for this entry, also cancelling the
-         * garbage collection timer if running.
-         */
-        private void resetTimeout() {
-            this.timeoutTime = LocalTime.now().plusSeconds(timeoutPeriod);
-            this.garbageCollectionStarted = false;
+    /**
+     * Adds the entry in the given slot to the journal of changed entries, if
+     * it is not already there, and moves on to a new table version.
+     */
+    private void markChanged(int slot) {
+        version++;
+        if (changedIndex[slot] < 0) {
+            changedIndex[slot] = numChanged;
+            changedSlots[numChanged++] = slot;
         }
+    }
 
-        /**
-         * Checks whether the timeout timer for this entry has just expired.
-         * If the garbage collection timer has been started, then the timeout
-         * was already expired, so return false.
-         * @return  Whether the timeout timer for this entry has just expired.
-         */
-        private boolean timeoutExpired() {
-            return !garbageCollectionStarted &&
-                    LocalTime.now().isAfter(this.timeoutTime);
+    /**
+     * Removes the entry in the given slot from the table, moving the entry in
+     * the last slot into its place so that the occupied slots stay dense.
+     */
+    private void removeAt(int slot) {
+        slots.remove(destIds[slot]);
+        timers.cancel(slot);
+        version++;
+
+        // Take the entry out of the changed journal by moving the last slot
+        // in the journal into its place.
+        int index = changedIndex[slot];
+        if (index >= 0) {
+            int lastChanged = changedSlots[--numChanged];
+            changedSlots[index] = lastChanged;
+            changedIndex[lastChanged] = index;
+            changedIndex[slot] = -1;
         }
 
-        /**
-         * Starts the garbage collection timer for this entry.
-         */
-        private void startGarbageCollectionTimer() {
-            this.garbageCollectionStarted = true;
-            this.garbageCollectionTime = LocalTime.now().plusSeconds(
-                    garbageCollectionPeriod);
+        int last = --size;
+        if (slot != last) {
+            destIds[slot] = destIds[last];
+            metrics[slot] = metrics[last];
+            nextHops[slot] = nextHops[last];
+            garbageCollectionStarted[slot] = garbageCollectionStarted[last];
+            timers.move(last, slot);
+            slots.put(destIds[slot], slot);
+
+            changedIndex[slot] = changedIndex[last];
+            changedIndex[last] = -1;
+            if (changedIndex[slot] >= 0) {
+                changedSlots[changedIndex[slot]] = slot;
+            }
         }
+    }
 
-        /**
-         * Checks whether the garbage collection timer has expired.
-         * @return True the garbage collection timer is running and has expired.
-         */
-        private boolean garbageCollectionExpired() {
-            return this.garbageCollectionStarted &&
-                    LocalTime.now().isAfter(this.garbageCollectionTime);
+    /**
+     * Copies entries into a new snapshot.
+     * @param count         The number of entries to copy.
+     * @param fromSlots     The slots of the entries to copy, or null to copy
+     *                      slots 0 to count - 1.
+     */
+    private RoutingTableSnapshot takeSnapshot(int count, int[] fromSlots) {
+        int[] snapshotDestIds = new int[count];
+        int[] snapshotMetrics = new int[count];
+        int[] snapshotNextHops = new int[count];
+        long[] snapshotDeadlines = new long[count];
+        boolean[] snapshotGarbageCollectionStarted = new boolean[count];
+
+        for (int i = 0; i < count; i++) {
+            int slot = fromSlots == null ? i : fromSlots[i];
+            snapshotDestIds[i] = destIds[slot];
+            snapshotMetrics[i] = metrics[slot];
+            snapshotNextHops[i] = nextHops[slot];
+            snapshotDeadlines[i] = timers.deadline(slot);
+            snapshotGarbageCollectionStarted[i] =
+                    garbageCollectionStarted[slot];
         }
 
-        /**
-         * Returns the time in seconds until the timeout timer will expire,
-         * or -1 if the timeout timer is not running (garbage collection has
-         * started).
-         * @return  Time until the timeout timer will expire.
-         */
-        private long secondsUntilTimeout() {
-            if (garbageCollectionStarted) {
-                return -1;
-            }
-            return LocalTime.now().until(timeoutTime, ChronoUnit.SECONDS);
-        }
+        return new RoutingTableSnapshot(version, routerId, count,
+                snapshotDestIds, snapshotMetrics, snapshotNextHops,
+                snapshotDeadlines, snapshotGarbageCollectionStarted);
+    }
 
-        /**
-         * Returns the time in seconds until the garbage collection timer will
-         * expire, or -1 if the garbage collection timer has not been started.
-         * @return  Time until the garbage collection timer will expire.
-         */
-        private long secondsUntilGC() {
-            if (!garbageCollectionStarted) {
-                return -1;
-            }
-            return LocalTime.now().until(garbageCollectionTime,
-                    ChronoUnit.SECONDS);
-        }
+    /**
+     * Doubles the capacity of each of the entry arrays.
+     */
+    private void grow() {
+        int capacity = destIds.length * 2;
+        destIds = Arrays.copyOf(destIds, capacity);
+        metrics = Arrays.copyOf(metrics, capacity);
+        nextHops = Arrays.copyOf(nextHops, capacity);
+        garbageCollectionStarted = Arrays.copyOf(garbageCollectionStarted,
+                capacity);
+        expiredDestIds = Arrays.copyOf(expiredDestIds, capacity);
+        changedSlots = Arrays.copyOf(changedSlots, capacity);
+        int oldCapacity = changedIndex.length;
+        changedIndex = Arrays.copyOf(changedIndex, capacity);
+        Arrays.fill(changedIndex, oldCapacity, capacity, -1);
+        timers.grow(capacity);
+    }
+
+    /**
+     * Creates a new int array of the given length with every element set to
+     * the given value.
+     */
+    private static int[] newFilledArray(int length, int value) {
+        int[] array = new int[length];
+        Arrays.fill(array, value);
+        return array;
     }
 }
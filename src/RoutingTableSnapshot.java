@@ -0,0 +1,232 @@
+/**
+ * An immutable copy of the entries of a routing table at a single table
+ * version. Once taken, a snapshot can be read from any thread without
+ * locking, while the live table carries on being updated, so updates can be
+ * encoded and the table displayed without holding up input processing.
+ *
+ * Entries are indexed from 0 to numEntries() - 1, in the same order as the
+ * slots of the table when the snapshot was taken.
+ */
+public class RoutingTableSnapshot {
+    /**
+     * The width of each column, and the length of the separator lines, when
+     * displaying the full routing table.
+     */
+    private static final int COLUMN_WIDTH = 13;
+    private static final int SEPARATOR_LENGTH = 77;
+    private static final String COLUMN_SEPARATOR = " | ";
+
+    /**
+     * The version of the table the snapshot was taken from.
+     */
+    private final long version;
+
+    /**
+     * The router ID of the router the table belongs to.
+     */
+    private final int routerId;
+
+    /**
+     * The number of entries in the snapshot.
+     */
+    private final int size;
+
+    /**
+     * The destination router ID, metric and next hop router ID of each entry.
+     */
+    private final int[] destIds;
+    private final int[] metrics;
+    private final int[] nextHops;
+
+    /**
+     * The deadline of the running timer of each entry, and whether that timer
+     * is the garbage-collection timer rather than the timeout timer.
+     */
+    private final long[] deadlines;
+    private final boolean[] garbageCollectionStarted;
+
+    /**
+     * Creates a snapshot from arrays which the caller has already copied and
+     * will never modify. Should only be called by RoutingTable.
+     */
+    RoutingTableSnapshot(long version, int routerId, int size, int[] destIds,
+                         int[] metrics, int[] nextHops, long[] deadlines,
+                         boolean[] garbageCollectionStarted) {
+        this.version = version;
+        this.routerId = routerId;
+        this.size = size;
+        this.destIds = destIds;
+        this.metrics = metrics;
+        this.nextHops = nextHops;
+        this.deadlines = deadlines;
+        this.garbageCollectionStarted = garbageCollectionStarted;
+    }
+
+    /**
+     * Returns the version of the table the snapshot was taken from.
+     * @return  The table version.
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the router ID of the router the table belongs to.
+     * @return  The router ID.
+     */
+    public int getRouterId() {
+        return routerId;
+    }
+
+    /**
+     * Returns the number of entries in the snapshot.
+     * @return  Number of entries.
+     */
+    public int numEntries() {
+        return size;
+    }
+
+    /**
+     * Returns the destination router ID of an entry.
+     * @param i     An index between 0 and numEntries() - 1.
+     * @return      The destination ID of the entry.
+     */
+    public int destIdAt(int i) {
+        return destIds[i];
+    }
+
+    /**
+     * Returns the metric of an entry.
+     * @param i     An index between 0 and numEntries() - 1.
+     * @return      The metric of the entry.
+     */
+    public int metricAt(int i) {
+        return metrics[i];
+    }
+
+    /**
+     * Returns the next hop router ID of an entry.
+     * @param i     An index between 0 and numEntries() - 1.
+     * @return      The next hop ID of the entry.
+     */
+    public int nextHopAt(int i) {
+        return nextHops[i];
+    }
+
+    /**
+     * Returns the deadline of the running timer of an entry, as it was when
+     * the snapshot was taken.
+     * @param i     An index between 0 and numEntries() - 1.
+     * @return      The timer deadline in nanoseconds.
+     */
+    public long deadlineAt(int i) {
+        return deadlines[i];
+    }
+
+    /**
+     * Checks whether an entry was waiting to be garbage-collected when the
+     * snapshot was taken, rather than waiting to time out.
+     * @param i     An index between 0 and numEntries() - 1.
+     * @return      True if the entry's garbage-collection timer was running.
+     */
+    public boolean isGarbageCollectionStarted(int i) {
+        return garbageCollectionStarted[i];
+    }
+
+    /**
+     * Renders the snapshot in the given display mode, appending the text to
+     * the given buffer so that the caller can reuse it between renders.
+     * @param mode      The display mode to render the table in. Nothing is
+     *                  appended if this is OFF.
+     * @param now       The current time in nanoseconds, which timers are
+     *                  shown relative to.
+     * @param result    The buffer to append the rendered table to.
+     */
+    public void render(RoutingTable.DisplayMode mode, long now,
+                       StringBuilder result) {
+        if (mode == RoutingTable.DisplayMode.FULL) {
+            renderFull(now, result);
+        } else if (mode == RoutingTable.DisplayMode.COMPACT) {
+            renderCompact(result);
+        }
+    }
+
+    /**
+     * Renders the full routing table, with a row for each entry showing its
+     * next hop, metric and timers.
+     */
+    private void renderFull(long now, StringBuilder result) {
+        appendSeparator(result);
+        result.append("Router ").append(routerId).append('\n');
+        appendSeparator(result);
+        appendCell(result, "Dest ID", COLUMN_SEPARATOR);
+        appendCell(result, "Next Hop ID", COLUMN_SEPARATOR);
+        appendCell(result, "Metric", COLUMN_SEPARATOR);
+        appendCell(result, "Timeout Timer", COLUMN_SEPARATOR);
+        appendCell(result, "GC Timer", "\n");
+        appendSeparator(result);
+
+        for (int i = 0; i < size; i++) {
+            long secondsLeft = (deadlines[i] - now) / Clock.NANOS_PER_SECOND;
+
+            appendCell(result, destIds[i], COLUMN_SEPARATOR);
+            appendCell(result, nextHops[i], COLUMN_SEPARATOR);
+            appendCell(result, metrics[i], COLUMN_SEPARATOR);
+            if (garbageCollectionStarted[i]) {
+                appendCell(result, "-", COLUMN_SEPARATOR);
+                appendCell(result, secondsLeft, "\n");
+            } else {
+                appendCell(result, secondsLeft, COLUMN_SEPARATOR);
+                appendCell(result, "-", "\n");
+            }
+        }
+    }
+
+    /**
+     * Renders the routing table on a single line, giving the destination
+     * ID, next hop ID and metric of each entry.
+     */
+    private void renderCompact(StringBuilder result) {
+        result.append("Router ").append(routerId)
+                .append(" [dest/nextHop/metric]:");
+        for (int i = 0; i < size; i++) {
+            result.append(' ').append(destIds[i])
+                    .append('/').append(nextHops[i])
+                    .append('/').append(metrics[i]);
+        }
+    }
+
+    private static void appendSeparator(StringBuilder result) {
+        for (int i = 0; i < SEPARATOR_LENGTH; i++) {
+            result.append('-');
+        }
+        result.append('\n');
+    }
+
+    /**
+     * Appends a value to a row of the full table, padded to the column width
+     * and followed by the given terminator (the column separator, or a
+     * newline for the last column).
+     */
+    private static void appendCell(StringBuilder result, String value,
+                                   String terminator) {
+        int start = result.length();
+        result.append(value);
+        padCell(result, start, terminator);
+    }
+
+    private static void appendCell(StringBuilder result, long value,
+                                   String terminator) {
+        int start = result.length();
+        result.append(value);
+        padCell(result, start, terminator);
+    }
+
+    private static void padCell(StringBuilder result, int start,
+                                String terminator) {
+        while (result.length() - start < COLUMN_WIDTH) {
+            result.append(' ');
+        }
+        result.append(terminator);
+    }
+}
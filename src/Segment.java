@@ -0,0 +1,66 @@
+import java.net.InetSocketAddress;
+
+/**
+ * A shared network segment, such as a LAN, joining this router to several
+ * of its neighbours. Rather than sending a separate unicast update to each
+ * neighbour on the segment, a router sends a single update to the segment's
+ * multicast group and port, which every router on the segment listens to.
+ *
+ * The same update reaches every neighbour, so it cannot use split horizon
+ * with poison reverse towards any one of them. Instead each entry carries
+ * the sender's next hop for the route, and receivers which are the next hop
+ * treat the route as unreachable (see Input.processPacket()).
+ */
+public class Segment {
+    /**
+     * The multicast group address and port the segment's updates are sent to.
+     */
+    private InetSocketAddress group;
+
+    /**
+     * The router IDs of the neighbours on the segment.
+     */
+    private int[] neighbourIds;
+
+    /**
+     * Creates a new segment.
+     * @param group         The multicast group address and port.
+     * @param neighbourIds  The router IDs of the neighbours on the segment,
+     *                      each of which must also be one of the router's
+     *                      outputs.
+     */
+    public Segment(InetSocketAddress group, int[] neighbourIds) {
+        this.group = group;
+        this.neighbourIds = neighbourIds;
+    }
+
+    /**
+     * Returns the multicast group address and port of the segment.
+     * @return  The group's socket address.
+     */
+    public InetSocketAddress getGroup() {
+        return group;
+    }
+
+    /**
+     * Returns the router IDs of the neighbours on the segment.
+     * @return  The neighbours' router IDs.
+     */
+    public int[] getNeighbourIds() {
+        return neighbourIds;
+    }
+
+    /**
+     * Checks whether the given router is one of the neighbours on the segment.
+     * @param routerId  The router ID to check for.
+     * @return          True if the router is on the segment.
+     */
+    public boolean contains(int routerId) {
+        for (int id : neighbourIds) {
+            if (id == routerId) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
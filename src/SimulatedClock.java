@@ -0,0 +1,24 @@
+/**
+ * A clock whose time only moves when it is explicitly advanced, used to run
+ * simulations in virtual time. Time starts at zero.
+ */
+public class SimulatedClock implements Clock {
+    /**
+     * The current virtual time in nanoseconds.
+     */
+    private long now = 0;
+
+    @Override
+    public long nanoTime() {
+        return now;
+    }
+
+    /**
+     * Moves the clock forward by the given amount of time.
+     * @param nanos     The time to advance by in nanoseconds, must not be
+     *                  negative.
+     */
+    public void advance(long nanos) {
+        now += nanos;
+    }
+}
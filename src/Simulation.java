@@ -0,0 +1,262 @@
+import java.util.ArrayList;
+import java.util.Random;
+
+/**
+ * Runs a network of RIP daemons inside a single JVM, connected by an
+ * InMemoryNetwork rather than UDP sockets.
+ *
+ * In real time, each daemon runs on its own thread, exactly as it would in
+ * its own process, so a whole topology can be started from its config files
+ * with a single command. In virtual time, the daemons share a SimulatedClock
+ * and are driven from a single thread, which handles every event due at the
+ * current time, then jumps the clock straight to the next deadline of any
+ * router. Packets are delivered with no delay.
+ */
+public class Simulation {
+    /**
+     * The network connecting the simulated routers.
+     */
+    private InMemoryNetwork network = new InMemoryNetwork();
+
+    /**
+     * The clock used by every router.
+     */
+    private Clock clock;
+
+    /**
+     * The simulated routers, and the threads running them once started.
+     */
+    private ArrayList<RIPDaemon> daemons = new ArrayList<>();
+    private ArrayList<Thread> threads = new ArrayList<>();
+
+    /**
+     * The transport of each router, in the same order as daemons.
+     */
+    private ArrayList<InMemoryTransport> transports = new ArrayList<>();
+
+    /**
+     * Seeds the random number generator of each router as it is added.
+     */
+    private Random seeds = new Random();
+
+    /**
+     * Creates an empty simulation. Use a SimulatedClock to be able to run the
+     * simulation in virtual time with runFor().
+     * @param clock     The clock to be used by every router.
+     */
+    public Simulation(Clock clock) {
+        this.clock = clock;
+    }
+
+    /**
+     * Seeds the random update timer offsets of the routers added from now on,
+     * so that a virtual time simulation is reproducible.
+     * @param seed      The seed.
+     */
+    public void setSeed(long seed) {
+        seeds.setSeed(seed);
+    }
+
+    /**
+     * Adds a router to the simulation. The router starts sending updates
+     * straight away, but only processes packets once start() is called.
+     * @param config    The parsed config file of the router.
+     * @return          The new router's daemon.
+     */
+    public RIPDaemon addRouter(ConfigFileParser config) {
+        InMemoryTransport transport = network.createTransport(
+                config.getInputPorts(), config.getReceiveBudget());
+        for (Segment segment : config.getSegments()) {
+            transport.joinGroup(segment.getGroup());
+        }
+        RIPDaemon daemon = new RIPDaemon(config.getRouterId(),
+                config.getOutputs(), config.getOutputAddresses(),
+                config.getSegments(), config.getUpdatePeriod(),
+                config.getTableDisplay(), clock, transport,
+                new Random(seeds.nextLong()));
+        daemon.setOutputPacing(config.getOutputSpread(),
+                config.getOutputRate());
+        daemons.add(daemon);
+        transports.add(transport);
+        return daemon;
+    }
+
+    /**
+     * Removes a router from the simulation, as if it had crashed. Packets
+     * sent to its input ports are dropped from now on.
+     * @param daemon    The router to remove.
+     */
+    public void removeRouter(RIPDaemon daemon) {
+        int i = daemons.indexOf(daemon);
+        daemons.remove(i);
+        InMemoryTransport transport = transports.remove(i);
+
+        if (threads.isEmpty()) {
+            transport.close();
+            return;
+        }
+
+        // The router's thread closes the transport once it has stopped.
+        daemon.stop();
+        Thread thread = threads.remove(i);
+        thread.interrupt();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Returns the transport of a router in the simulation, which counts the
+     * packets and bytes the router has sent.
+     * @param daemon    The router.
+     * @return          The router's transport.
+     */
+    public InMemoryTransport getTransport(RIPDaemon daemon) {
+        return transports.get(daemons.indexOf(daemon));
+    }
+
+    /**
+     * Returns the routers in the simulation, in the order they were added.
+     * @return  The simulated routers.
+     */
+    public ArrayList<RIPDaemon> getRouters() {
+        return daemons;
+    }
+
+    /**
+     * Returns the network connecting the simulated routers.
+     * @return  The simulated network.
+     */
+    public InMemoryNetwork getNetwork() {
+        return network;
+    }
+
+    /**
+     * Runs the simulation in virtual time for the given duration, advancing
+     * the simulated clock from one event to the next. Must not be combined
+     * with start().
+     * @param duration  The length of virtual time to run for in nanoseconds.
+     */
+    public void runFor(long duration) {
+        if (!(clock instanceof SimulatedClock)) {
+            throw new IllegalStateException("A simulation can only be run " +
+                    "in virtual time with a SimulatedClock.");
+        }
+        SimulatedClock virtualClock = (SimulatedClock) clock;
+        long end = virtualClock.nanoTime() + duration;
+
+        while (true) {
+            handleCurrentEvents();
+
+            long delay = Long.MAX_VALUE;
+            for (RIPDaemon daemon : daemons) {
+                delay = Math.min(delay, daemon.nanosUntilNextEvent());
+            }
+
+            long remaining = end - virtualClock.nanoTime();
+            if (delay >= remaining) {
+                virtualClock.advance(remaining);
+                handleCurrentEvents();
+                return;
+            }
+
+            // Deadlines are only handled once the time is strictly after
+            // them, so always move forward by at least a nanosecond.
+            virtualClock.advance(Math.max(delay, 1));
+        }
+    }
+
+    /**
+     * Lets every router handle the events due at the current virtual time,
+     * repeating until no packets are left waiting to be processed.
+     */
+    private void handleCurrentEvents() {
+        boolean pending;
+        do {
+            for (RIPDaemon daemon : daemons) {
+                daemon.handleEvents(0);
+            }
+
+            pending = false;
+            for (InMemoryTransport transport : transports) {
+                pending |= transport.hasPendingPackets();
+            }
+        } while (pending);
+    }
+
+    /**
+     * Starts a thread running each router in real time.
+     */
+    public void start() {
+        for (RIPDaemon daemon : daemons) {
+            Thread thread = new Thread(daemon::run, "router");
+            threads.add(thread);
+            thread.start();
+        }
+    }
+
+    /**
+     * Stops every router and waits for their threads to finish.
+     */
+    public void stop() {
+        for (RIPDaemon daemon : daemons) {
+            daemon.stop();
+        }
+
+        for (Thread thread : threads) {
+            thread.interrupt();
+            try {
+                thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        threads.clear();
+    }
+
+    public static void main(String[] args) {
+        String usage = "Usage: java Simulation [-t <virtual-seconds>] " +
+                "<config-filename>...";
+        if (args.length == 0) {
+            Error.error(usage);
+        }
+
+        // With -t, run in virtual time for the given number of seconds, then
+        // display every router's table and exit.
+        int firstFile = 0;
+        long virtualSeconds = -1;
+        if (args[0].equals("-t")) {
+            if (args.length < 3) {
+                Error.error(usage);
+            }
+            try {
+                virtualSeconds = Long.parseLong(args[1]);
+            } catch (NumberFormatException e) {
+                Error.error(usage);
+            }
+            firstFile = 2;
+        }
+
+        Clock clock = virtualSeconds >= 0 ? new SimulatedClock()
+                : new SystemClock();
+        Simulation simulation = new Simulation(clock);
+        for (int i = firstFile; i < args.length; i++) {
+            ConfigFileParser parser = new ConfigFileParser(args[i]);
+            parser.parseFile();
+            simulation.addRouter(parser);
+        }
+
+        if (virtualSeconds < 0) {
+            simulation.start();
+            return;
+        }
+
+        simulation.runFor(virtualSeconds * Clock.NANOS_PER_SECOND);
+        for (RIPDaemon daemon : simulation.getRouters()) {
+            System.out.println(daemon.getTable());
+        }
+    }
+}
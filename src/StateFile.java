@@ -0,0 +1,209 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A memory-mapped file which the routing table is saved to while the daemon
+ * runs, so that a restarted daemon can restore the routes it had learnt
+ * rather than starting with only its neighbours and waiting several update
+ * periods to learn the rest of the network.
+ *
+ * The file has a fixed layout: a header of HEADER_BYTES, followed by an
+ * ENTRY_BYTES record for each route holding its destination ID, metric,
+ * next hop ID and the milliseconds left on its timeout timer, all as
+ * 32-bit big-endian integers. Routes waiting to be garbage-collected are
+ * not saved. Saving writes straight into the mapped pages, so it costs no
+ * system calls, and the operating system writes the pages out in its own
+ * time. The file therefore survives the daemon exiting or crashing, but not
+ * necessarily the host crashing, which loses the routes anyway.
+ *
+ * The header's sequence number is odd while the file is being written, so
+ * that a file left half-written by a crash is ignored.
+ */
+public class StateFile {
+    /**
+     * Logged when the file cannot be grown to fit the routing table.
+     */
+    private static final Log.Message GROW_FAILED = new Log.Message(
+            Log.Level.ERROR, "ERROR: could not grow state file %s.", 1);
+
+    /**
+     * Identifies the file as a routing table state file, and the version of
+     * its layout.
+     */
+    private static final int MAGIC = 0x52495053;
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * The offsets of the header fields: the magic number, format version,
+     * sequence number, router ID, number of entries, and the wall-clock time
+     * in milliseconds when the file was last saved.
+     */
+    private static final int MAGIC_OFFSET = 0;
+    private static final int FORMAT_VERSION_OFFSET = 4;
+    private static final int SEQUENCE_OFFSET = 8;
+    private static final int ROUTER_ID_OFFSET = 12;
+    private static final int NUM_ENTRIES_OFFSET = 16;
+    private static final int SAVED_AT_OFFSET = 20;
+
+    /**
+     * The size of the header, and of each entry, in bytes.
+     */
+    private static final int HEADER_BYTES = 32;
+    private static final int ENTRY_BYTES = 16;
+
+    /**
+     * The number of entries the file has room for when first created.
+     */
+    private static final int INITIAL_CAPACITY = 64;
+
+    /**
+     * The path of the file.
+     */
+    private String filename;
+
+    /**
+     * The open file, kept open so that it can be mapped again when it grows.
+     */
+    private FileChannel channel;
+
+    /**
+     * The mapped contents of the file.
+     */
+    private MappedByteBuffer buffer;
+
+    /**
+     * The number of entries the mapped file has room for.
+     */
+    private int capacity;
+
+    /**
+     * Set once an error saving the file has been reported, so that it is
+     * not reported again every time the table is saved.
+     */
+    private boolean saveErrorReported = false;
+
+    /**
+     * Opens the given state file, creating it if it doesn't exist, and maps
+     * it into memory. Terminates the program if the file cannot be opened.
+     * @param filename  The path of the file.
+     */
+    public StateFile(String filename) {
+        this.filename = filename;
+        try {
+            this.channel = FileChannel.open(Paths.get(filename),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            long entries = (this.channel.size() - HEADER_BYTES) / ENTRY_BYTES;
+            // A table has at most one entry per router ID, which bounds the
+            // size of any valid file.
+            map((int) Math.min(Math.max(entries, INITIAL_CAPACITY),
+                    RIPDaemon.MAX_ROUTER_ID));
+        } catch (IOException e) {
+            Error.error(String.format("ERROR: could not open state file %s.",
+                    filename));
+        }
+    }
+
+    /**
+     * Restores the routes saved in the file into the given routing table,
+     * through RoutingTable.restoreEntry(). The time the daemon was down for
+     * is taken off each route's timeout timer, so routes which would have
+     * timed out in the meantime are not restored. Nothing is restored if the
+     * file is empty, was saved by a different router, or was left
+     * half-written.
+     * @param table The routing table to restore the routes into.
+     * @return      The number of routes restored.
+     */
+    public int restore(RoutingTable table) {
+        MappedByteBuffer buffer = this.buffer;
+        if (buffer.getInt(MAGIC_OFFSET) != MAGIC ||
+                buffer.getInt(FORMAT_VERSION_OFFSET) != FORMAT_VERSION ||
+                buffer.getInt(SEQUENCE_OFFSET) % 2 != 0 ||
+                buffer.getInt(ROUTER_ID_OFFSET) != table.getRouterId()) {
+            return 0;
+        }
+
+        int numEntries = buffer.getInt(NUM_ENTRIES_OFFSET);
+        if (numEntries < 0 || numEntries > this.capacity) {
+            return 0;
+        }
+        long downtimeMillis = Math.max(0, System.currentTimeMillis() -
+                buffer.getLong(SAVED_AT_OFFSET));
+
+        int restored = 0;
+        for (int i = 0; i < numEntries; i++) {
+            int offset = HEADER_BYTES + i * ENTRY_BYTES;
+            long remainingMillis = buffer.getInt(offset + 12) - downtimeMillis;
+            if (table.restoreEntry(buffer.getInt(offset),
+                    buffer.getInt(offset + 4), buffer.getInt(offset + 8),
+                    remainingMillis * Clock.NANOS_PER_MILLI)) {
+                restored++;
+            }
+        }
+        return restored;
+    }
+
+    /**
+     * Saves the routes in the given snapshot to the file, replacing what
+     * was saved before. Routes waiting to be garbage-collected are left out.
+     * If the file cannot be grown to fit the routes, an error is logged
+     * (once) and the file is left as it was.
+     * @param snapshot  A snapshot of the routing table, with its timers as
+     *                  they are now (see RoutingTable.currentSnapshot()).
+     * @param now       The current clock time in nanoseconds, which the
+     *                  snapshot's timer deadlines are relative to.
+     */
+    public void save(RoutingTableSnapshot snapshot, long now) {
+        if (snapshot.numEntries() > this.capacity) {
+            try {
+                map(Math.max(snapshot.numEntries(), this.capacity * 2));
+            } catch (IOException e) {
+                if (!this.saveErrorReported) {
+                    Log.log(GROW_FAILED, this.filename);
+                    this.saveErrorReported = true;
+                }
+                return;
+            }
+        }
+
+        MappedByteBuffer buffer = this.buffer;
+        int sequence = buffer.getInt(SEQUENCE_OFFSET) | 1;
+        buffer.putInt(SEQUENCE_OFFSET, sequence);
+
+        int numEntries = 0;
+        for (int i = 0; i < snapshot.numEntries(); i++) {
+            if (snapshot.isGarbageCollectionStarted(i)) {
+                continue;
+            }
+            long remainingMillis = (snapshot.deadlineAt(i) - now) /
+                    Clock.NANOS_PER_MILLI;
+            int offset = HEADER_BYTES + numEntries * ENTRY_BYTES;
+            buffer.putInt(offset, snapshot.destIdAt(i));
+            buffer.putInt(offset + 4, snapshot.metricAt(i));
+            buffer.putInt(offset + 8, snapshot.nextHopAt(i));
+            buffer.putInt(offset + 12, (int) Math.min(remainingMillis,
+                    Integer.MAX_VALUE));
+            numEntries++;
+        }
+
+        buffer.putInt(MAGIC_OFFSET, MAGIC);
+        buffer.putInt(FORMAT_VERSION_OFFSET, FORMAT_VERSION);
+        buffer.putInt(ROUTER_ID_OFFSET, snapshot.getRouterId());
+        buffer.putInt(NUM_ENTRIES_OFFSET, numEntries);
+        buffer.putLong(SAVED_AT_OFFSET, System.currentTimeMillis());
+        buffer.putInt(SEQUENCE_OFFSET, sequence + 1);
+    }
+
+    /**
+     * Maps the file with room for the given number of entries, growing the
+     * file if it is smaller.
+     */
+    private void map(int capacity) throws IOException {
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                HEADER_BYTES + (long) capacity * ENTRY_BYTES);
+        this.capacity = capacity;
+    }
+}
@@ -0,0 +1,10 @@
+/**
+ * A clock backed by System.nanoTime(), which is unaffected by wall-clock
+ * changes and does not wrap at midnight.
+ */
+public class SystemClock implements Clock {
+    @Override
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
@@ -0,0 +1,281 @@
+import java.util.Arrays;
+
+/**
+ * A hashed timing wheel holding at most one timer for each slot of the
+ * routing table. Each timer is kept in a doubly-linked list for the bucket
+ * of the tick in which it expires, so scheduling, rescheduling and cancelling
+ * a timer are all O(1), and expiring timers only touches the buckets for
+ * ticks which have passed since the last call.
+ *
+ * The wheel is sized to cover the longest timer period the routing table
+ * uses, so almost every timer found in an elapsed bucket has expired. Timers
+ * further away than one revolution simply stay in their bucket until the
+ * right revolution comes around.
+ *
+ * The links are stored in primitive arrays indexed by slot, so nothing is
+ * allocated once the arrays are large enough.
+ */
+public class TimerWheel {
+    /**
+     * Marks the end of a bucket's list, or a slot with no timer scheduled.
+     */
+    private static final int NONE = -1;
+
+    /**
+     * The length of a single tick of the wheel in nanoseconds.
+     */
+    private final long tickNanos;
+
+    /**
+     * The time from which ticks are counted.
+     */
+    private final long origin;
+
+    /**
+     * The first slot in the list of each bucket, or NONE if it is empty. The
+     * number of buckets is a power of two.
+     */
+    private final int[] heads;
+
+    /**
+     * Mask used to map a tick number to its bucket.
+     */
+    private final int mask;
+
+    /**
+     * The last tick whose bucket has been processed by expire().
+     */
+    private long currentTick;
+
+    /**
+     * The number of timers currently scheduled.
+     */
+    private int scheduled = 0;
+
+    /**
+     * The deadline of each slot's timer, and the next and previous slots in
+     * the same bucket. bucketOf is NONE for slots with no timer scheduled.
+     */
+    private long[] deadlines;
+    private int[] next;
+    private int[] prev;
+    private int[] bucketOf;
+
+    /**
+     * The slots whose timers expired during the last call to expire().
+     */
+    private int[] expired;
+
+    /**
+     * Creates a new timing wheel with no timers scheduled.
+     * @param tickNanos     The length of each tick in nanoseconds.
+     * @param maxPeriod     The longest period in nanoseconds that timers are
+     *                      expected to be scheduled for.
+     * @param capacity      The initial number of slots.
+     * @param now           The current time in nanoseconds.
+     */
+    public TimerWheel(long tickNanos, long maxPeriod, int capacity, long now) {
+        this.tickNanos = tickNanos;
+        this.origin = now;
+
+        int numBuckets = 1;
+        while (numBuckets * tickNanos <= maxPeriod) {
+            numBuckets <<= 1;
+        }
+        this.heads = new int[numBuckets];
+        Arrays.fill(this.heads, NONE);
+        this.mask = numBuckets - 1;
+
+        this.deadlines = new long[capacity];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.bucketOf = new int[capacity];
+        this.expired = new int[capacity];
+        Arrays.fill(this.bucketOf, NONE);
+    }
+
+    /**
+     * Schedules the timer for the given slot to expire at the given time,
+     * replacing any timer already scheduled for the slot.
+     * @param slot      The slot to schedule the timer for.
+     * @param deadline  The time in nanoseconds at which the timer expires.
+     */
+    public void schedule(int slot, long deadline) {
+        cancel(slot);
+
+        // Round the deadline up to a whole tick, so that a timer is never
+        // found in a bucket before its deadline has passed. Timers due in a
+        // tick which has already been processed go in the next bucket.
+        long tick = ceilDiv(deadline - origin, tickNanos);
+        if (tick <= currentTick) {
+            tick = currentTick + 1;
+        }
+
+        int bucket = (int) tick & mask;
+        deadlines[slot] = deadline;
+        bucketOf[slot] = bucket;
+        prev[slot] = NONE;
+        next[slot] = heads[bucket];
+        if (heads[bucket] != NONE) {
+            prev[heads[bucket]] = slot;
+        }
+        heads[bucket] = slot;
+        scheduled++;
+    }
+
+    /**
+     * Cancels the timer for the given slot, if one is scheduled.
+     * @param slot  The slot to cancel the timer for.
+     */
+    public void cancel(int slot) {
+        int bucket = bucketOf[slot];
+        if (bucket == NONE) {
+            return;
+        }
+
+        if (prev[slot] != NONE) {
+            next[prev[slot]] = next[slot];
+        } else {
+            heads[bucket] = next[slot];
+        }
+        if (next[slot] != NONE) {
+            prev[next[slot]] = prev[slot];
+        }
+
+        bucketOf[slot] = NONE;
+        scheduled--;
+    }
+
+    /**
+     * Moves the timer scheduled for one slot to another slot, which must not
+     * have a timer scheduled. Used when the routing table moves an entry.
+     * @param from  The slot the timer is currently scheduled for.
+     * @param to    The slot to move the timer to.
+     */
+    public void move(int from, int to) {
+        int bucket = bucketOf[from];
+        bucketOf[to] = bucket;
+        bucketOf[from] = NONE;
+        if (bucket == NONE) {
+            return;
+        }
+
+        deadlines[to] = deadlines[from];
+        next[to] = next[from];
+        prev[to] = prev[from];
+        if (prev[to] != NONE) {
+            next[prev[to]] = to;
+        } else {
+            heads[bucket] = to;
+        }
+        if (next[to] != NONE) {
+            prev[next[to]] = to;
+        }
+    }
+
+    /**
+     * Checks whether a timer is scheduled for the given slot.
+     * @param slot  The slot to check.
+     * @return      True if the slot has a timer scheduled.
+     */
+    public boolean isScheduled(int slot) {
+        return bucketOf[slot] != NONE;
+    }
+
+    /**
+     * Returns the deadline of the timer for the given slot. Only meaningful
+     * if a timer is scheduled for the slot.
+     * @param slot  The slot to get the deadline for.
+     * @return      The deadline of the slot's timer in nanoseconds.
+     */
+    public long deadline(int slot) {
+        return deadlines[slot];
+    }
+
+    /**
+     * Returns the time until the next tick whose bucket holds a timer, which
+     * is the earliest time that expire() could return any timers. A timer due
+     * in a later revolution of the wheel may cause this to be earlier than
+     * any actual deadline, but never later.
+     * @param now   The current time in nanoseconds.
+     * @return      Nanoseconds until the next timer could expire (0 if it
+     *              could already have expired), or Long.MAX_VALUE if no
+     *              timers are scheduled.
+     */
+    public long nanosUntilNextExpiry(long now) {
+        if (scheduled == 0) {
+            return Long.MAX_VALUE;
+        }
+
+        long tick = currentTick + 1;
+        while (heads[(int) tick & mask] == NONE) {
+            tick++;
+        }
+        return Math.max(0, origin + tick * tickNanos - now);
+    }
+
+    /**
+     * Removes all timers which have expired by the given time from the wheel.
+     * The expired slots can then be read with expiredSlot(), until the next
+     * call to expire() or grow().
+     * @param now   The current time in nanoseconds.
+     * @return      The number of timers which expired.
+     */
+    public int expire(long now) {
+        long nowTick = Math.floorDiv(now - origin, tickNanos);
+        if (nowTick <= currentTick) {
+            return 0;
+        }
+
+        // Process each bucket at most once, even if more than a full
+        // revolution has passed since the last call.
+        long firstTick = Math.max(currentTick + 1, nowTick - mask);
+        int numExpired = 0;
+
+        for (long tick = firstTick; tick <= nowTick && scheduled > 0; tick++) {
+            int slot = heads[(int) tick & mask];
+            while (slot != NONE) {
+                int nextSlot = next[slot];
+                if (deadlines[slot] - now <= 0) {
+                    cancel(slot);
+                    expired[numExpired++] = slot;
+                }
+                slot = nextSlot;
+            }
+        }
+
+        currentTick = nowTick;
+        return numExpired;
+    }
+
+    /**
+     * Returns one of the slots whose timer expired in the last call to
+     * expire().
+     * @param i     An index between 0 and the value returned by expire() - 1.
+     * @return      The expired slot.
+     */
+    public int expiredSlot(int i) {
+        return expired[i];
+    }
+
+    /**
+     * Grows the per-slot arrays to hold the given number of slots.
+     * @param capacity  The new number of slots.
+     */
+    public void grow(int capacity) {
+        int oldCapacity = bucketOf.length;
+        deadlines = Arrays.copyOf(deadlines, capacity);
+        next = Arrays.copyOf(next, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        bucketOf = Arrays.copyOf(bucketOf, capacity);
+        expired = Arrays.copyOf(expired, capacity);
+        Arrays.fill(bucketOf, oldCapacity, capacity, NONE);
+    }
+
+    /**
+     * Divides a by b, rounding towards positive infinity.
+     */
+    private static long ceilDiv(long a, long b) {
+        return -Math.floorDiv(-a, b);
+    }
+}
@@ -0,0 +1,97 @@
+/**
+ * A token bucket limiting the rate at which bytes are sent. Tokens are added
+ * at a fixed rate up to the bucket's capacity, and sending takes tokens out.
+ *
+ * Updates are sent to a neighbour as a whole, so a send is allowed whenever
+ * the bucket is not empty, even if it holds fewer tokens than the send
+ * needs. The bucket then goes into debt, and later sends wait until it has
+ * been paid off. This keeps the long-run rate without needing a capacity at
+ * least as large as the largest update.
+ */
+public class TokenBucket {
+    /**
+     * The rate at which tokens are added, in bytes per second.
+     */
+    private long bytesPerSecond;
+
+    /**
+     * The most tokens the bucket can hold, which is the largest burst that
+     * can be sent after a quiet spell.
+     */
+    private long capacity;
+
+    /**
+     * The number of tokens in the bucket as of lastRefillTime, scaled by
+     * NANOS_PER_SECOND so that refilling needs no division. Negative while
+     * the bucket is in debt.
+     */
+    private long scaledTokens;
+
+    /**
+     * The clock time at which scaledTokens was last brought up to date.
+     */
+    private long lastRefillTime;
+
+    /**
+     * Creates a new, full token bucket.
+     * @param bytesPerSecond    The rate at which tokens are added, must be
+     *                          positive.
+     * @param capacity          The most tokens the bucket can hold.
+     * @param now               The current clock time in nanoseconds.
+     */
+    public TokenBucket(long bytesPerSecond, long capacity, long now) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.scaledTokens = capacity * Clock.NANOS_PER_SECOND;
+        this.lastRefillTime = now;
+    }
+
+    /**
+     * Takes the given number of bytes out of the bucket, going into debt if
+     * there are not enough tokens. Callers pacing their sends should check
+     * nanosUntilAvailable() first, while sends which cannot be delayed are
+     * taken out regardless.
+     * @param bytes The number of bytes sent.
+     * @param now   The current clock time in nanoseconds.
+     */
+    public void consume(long bytes, long now) {
+        refill(now);
+        this.scaledTokens -= bytes * Clock.NANOS_PER_SECOND;
+    }
+
+    /**
+     * Returns the time until the bucket is out of debt, so that the next
+     * paced send is allowed.
+     * @param now   The current clock time in nanoseconds.
+     * @return      Nanoseconds until the bucket is no longer in debt, or 0 if
+     *              it is not in debt now.
+     */
+    public long nanosUntilAvailable(long now) {
+        refill(now);
+        if (this.scaledTokens >= 0) {
+            return 0;
+        }
+        // Round up, so that the bucket is out of debt by the time returned.
+        return (-this.scaledTokens + this.bytesPerSecond - 1) /
+                this.bytesPerSecond;
+    }
+
+    /**
+     * Adds the tokens accumulated since the last refill.
+     */
+    private void refill(long now) {
+        long elapsed = now - this.lastRefillTime;
+        if (elapsed <= 0) {
+            return;
+        }
+        this.lastRefillTime = now;
+
+        long maxTokens = this.capacity * Clock.NANOS_PER_SECOND;
+        // Avoid overflow after a long quiet spell: the bucket is full anyway.
+        if (elapsed >= (maxTokens - this.scaledTokens) / this.bytesPerSecond) {
+            this.scaledTokens = maxTokens;
+        } else {
+            this.scaledTokens += elapsed * this.bytesPerSecond;
+        }
+    }
+}
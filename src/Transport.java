@@ -0,0 +1,83 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+
+/**
+ * Carries RIP packets between routers. Input receives packets through a
+ * transport, and Output sends packets through it, so the daemon can run
+ * either over real UDP sockets or over an in-memory network of routers
+ * inside a single JVM.
+ */
+public interface Transport {
+    /**
+     * Sends the packet between the buffer's position and limit to the given
+     * destination. The buffer's contents are not modified, but its position
+     * may be.
+     * @param packet        The packet to send.
+     * @param destination   The address and port to send the packet to.
+     * @throws IOException  If the packet could not be sent.
+     */
+    void send(ByteBuffer packet, InetSocketAddress destination)
+            throws IOException;
+
+    /**
+     * Waits for packets to arrive on this router's input ports, then passes
+     * each packet received to the given handler. Any errors are logged.
+     * @param timeout   The longest time to wait in nanoseconds. If this is
+     *                  not positive, only packets which have already arrived
+     *                  are handled. Long.MAX_VALUE, as returned when no
+     *                  timers are running, waits until a packet arrives or
+     *                  wakeup() is called.
+     * @param handler   The handler to pass received packets to.
+     */
+    void receive(long timeout, PacketHandler handler);
+
+    /**
+     * Starts receiving packets sent to another input port, as when the
+     * router's config file is reloaded. Must be called on the thread which
+     * receives packets.
+     * @param port          The port number to listen on.
+     * @throws IOException  If the port could not be opened.
+     */
+    void openInputPort(int port) throws IOException;
+
+    /**
+     * Stops receiving packets sent to one of the input ports. Must be called
+     * on the thread which receives packets.
+     * @param port  The port number to stop listening on.
+     */
+    void closeInputPort(int port);
+
+    /**
+     * Starts receiving packets sent to a multicast group, as well as those
+     * sent to the input ports, terminating the program if the group cannot
+     * be joined.
+     * @param group The multicast group address and port to listen to.
+     */
+    void joinGroup(InetSocketAddress group);
+
+    /**
+     * Makes a call to receive() which is waiting on another thread return
+     * straight away. If no call is waiting, the next call returns without
+     * waiting.
+     */
+    void wakeup();
+
+    /**
+     * Closes all of the transport's sockets or queues.
+     */
+    void close();
+
+    /**
+     * Handles packets received by a transport.
+     */
+    interface PacketHandler {
+        /**
+         * Handles a single received packet. The buffer is only valid until
+         * this method returns.
+         * @param packet    A buffer holding the packet between its position
+         *                  and limit.
+         */
+        void handlePacket(ByteBuffer packet);
+    }
+}
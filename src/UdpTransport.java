@@ -0,0 +1,257 @@
+import java.io.IOException;
+import java.net.Inet6Address;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+
+/**
+ * Sends and receives packets over UDP, with a datagram channel for each
+ * input port and a single channel for sending.
+ */
+public class UdpTransport implements Transport {
+    /**
+     * The diagnostic messages logged while receiving packets.
+     */
+    private static final Log.Message SELECT_FAILED = new Log.Message(
+            Log.Level.ERROR, "ERROR: could not select readable input sockets.",
+            10);
+    private static final Log.Message RECEIVE_FAILED = new Log.Message(
+            Log.Level.ERROR, "ERROR: could not receive packet from input " +
+            "socket.", 10);
+
+    /**
+     * The selector used to select input sockets which are ready to read.
+     */
+    private Selector selector;
+
+    /**
+     * The channel listening on each input port, keyed by port number.
+     */
+    private HashMap<Integer, DatagramChannel> inputChannels = new HashMap<>();
+
+    /**
+     * The channel used for sending packets, or null if the transport is only
+     * used for receiving.
+     */
+    private DatagramChannel outputChannel;
+
+    /**
+     * The maximum number of packets to receive from a single input socket
+     * each time the sockets are selected, so that a busy port cannot starve
+     * the others.
+     */
+    private int receiveBudget;
+
+    /**
+     * A byte buffer to store data received from the input sockets. A direct
+     * buffer is used so that packets are received straight into native
+     * memory, without an extra copy through a temporary buffer.
+     */
+    private ByteBuffer inBuffer = ByteBuffer.allocateDirect(
+            RIPDaemon.MAX_RESPONSE_PACKET_SIZE);
+
+    /**
+     * Opens the input and output sockets, terminating the program if any of
+     * them cannot be opened.
+     * @param inputPorts    A list of the port numbers to use for input sockets.
+     * @param outputPortNo  The port number to use for the output socket.
+     * @param receiveBudget The maximum number of packets to receive from each
+     *                      input socket per call to receive().
+     */
+    public UdpTransport(ArrayList<Integer> inputPorts, int outputPortNo,
+                        int receiveBudget) {
+        this(inputPorts, receiveBudget);
+
+        try {
+            this.outputChannel = DatagramChannel.open();
+            this.outputChannel.bind(new InetSocketAddress(outputPortNo));
+        } catch (IOException e) {
+            e.printStackTrace();
+            Error.error(String.format("ERROR: could not open output " +
+                    "socket with port number %d.", outputPortNo));
+        }
+    }
+
+    /**
+     * Opens the input sockets only, for a transport which is never used to
+     * send packets, terminating the program if any of them cannot be opened.
+     * @param inputPorts    A list of the port numbers to use for input sockets.
+     * @param receiveBudget The maximum number of packets to receive from each
+     *                      input socket per call to receive().
+     */
+    public UdpTransport(ArrayList<Integer> inputPorts, int receiveBudget) {
+        this.receiveBudget = receiveBudget;
+
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            Error.error("Error: Could not instantiate input port " +
+                    "selector");
+        }
+
+        // Register a datagram channel for each input port with the selector.
+        for (int port : inputPorts) {
+            try {
+                openInputPort(port);
+            } catch (IOException e) {
+                e.printStackTrace();
+                Error.error(String.format("Error opening input socket " +
+                        "with port number %d", port));
+            }
+        }
+    }
+
+    @Override
+    public void openInputPort(int port) throws IOException {
+        DatagramChannel channel = DatagramChannel.open();
+        try {
+            channel.configureBlocking(false);
+            channel.socket().bind(new InetSocketAddress(port));
+            channel.register(selector, SelectionKey.OP_READ);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        inputChannels.put(port, channel);
+    }
+
+    @Override
+    public void closeInputPort(int port) {
+        DatagramChannel channel = inputChannels.remove(port);
+        if (channel == null) {
+            return;
+        }
+
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // The channel is deregistered from the selector either way.
+        }
+    }
+
+    /**
+     * Opens a socket listening to the given multicast group, joining the
+     * group on every network interface which supports multicast. The port is
+     * shared with any other routers on this host listening to the same group.
+     */
+    @Override
+    public void joinGroup(InetSocketAddress group) {
+        try {
+            StandardProtocolFamily family =
+                    group.getAddress() instanceof Inet6Address ?
+                    StandardProtocolFamily.INET6 : StandardProtocolFamily.INET;
+            DatagramChannel channel = DatagramChannel.open(family);
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(group.getPort()));
+
+            int joined = 0;
+            for (NetworkInterface networkInterface : Collections.list(
+                    NetworkInterface.getNetworkInterfaces())) {
+                if (!networkInterface.isUp() ||
+                        !networkInterface.supportsMulticast()) {
+                    continue;
+                }
+                try {
+                    channel.join(group.getAddress(), networkInterface);
+                    joined++;
+                } catch (IOException e) {
+                    // Interfaces without an address of the group's family
+                    // cannot join it, but the others still can.
+                }
+            }
+            if (joined == 0) {
+                throw new IOException("No interface supports multicast.");
+            }
+
+            channel.configureBlocking(false);
+            channel.register(selector, SelectionKey.OP_READ);
+
+        } catch (IOException e) {
+            e.printStackTrace();
+            Error.error(String.format("Error joining multicast group %s",
+                    group));
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer packet, InetSocketAddress destination)
+            throws IOException {
+        if (outputChannel == null) {
+            throw new IOException("Transport has no output socket.");
+        }
+        outputChannel.send(packet, destination);
+    }
+
+    /**
+     * Waits for packets using a blocking select call, then handles all of the
+     * packets waiting on each readable socket, up to the receive budget; any
+     * left over are picked up by the next call.
+     */
+    @Override
+    public void receive(long timeout, PacketHandler handler) {
+        try {
+            // Round the timeout up to whole milliseconds, so that the select
+            // call never returns before the timeout has passed. Timeouts too
+            // long to round up without overflowing, such as Long.MAX_VALUE,
+            // wait indefinitely, which select() asks for with 0.
+            long timeoutMillis = timeout > Long.MAX_VALUE - 999999 ? 0 :
+                    (timeout + 999999) / 1000000;
+            if (timeout <= 0) {
+                selector.selectNow();
+            } else {
+                selector.select(timeoutMillis);
+            }
+        } catch (IOException e) {
+            Log.log(SELECT_FAILED);
+            return;
+        }
+
+        for (SelectionKey key : selector.selectedKeys()) {
+            if (key.isReadable()) {
+                DatagramChannel channel = (DatagramChannel) key.channel();
+                try {
+                    for (int i = 0; i < receiveBudget; i++) {
+                        inBuffer.clear();
+                        if (channel.receive(inBuffer) == null) {
+                            break;
+                        }
+                        inBuffer.flip();
+                        handler.handlePacket(inBuffer);
+                    }
+                } catch (IOException e) {
+                    Log.log(RECEIVE_FAILED);
+                }
+            }
+        }
+
+        selector.selectedKeys().clear();
+    }
+
+    @Override
+    public void wakeup() {
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        try {
+            for (SelectionKey key : selector.keys()) {
+                key.channel().close();
+            }
+            selector.close();
+            if (outputChannel != null) {
+                outputChannel.close();
+            }
+        } catch (IOException e) {
+            // Nothing more can be done if the sockets fail to close.
+        }
+    }
+}